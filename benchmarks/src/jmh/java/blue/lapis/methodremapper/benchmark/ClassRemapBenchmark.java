@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.benchmark;
+
+import blue.lapis.methodremapper.Remapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of remapping a single class with a warm
+ * {@link Remapper}, both for a class that needs to be remapped and one that
+ * can be skipped. Run with the {@code gc} profiler to see the allocation rate
+ * per class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ClassRemapBenchmark {
+
+    private static final int CLASSES = 1000;
+
+    private Remapper remapper;
+    private byte[] mapped;
+    private byte[] unmapped;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Corpus corpus = Corpus.generate(CLASSES);
+        this.remapper = new Remapper(corpus, corpus.getMappings());
+
+        // Resolve the mappings of all classes so only the remapping is measured
+        for (String name : corpus.getClasses().keySet()) {
+            this.remapper.getMappings(name);
+        }
+
+        this.mapped = corpus.getClasses().get(Corpus.PACKAGE + "Class" + (CLASSES / 2));
+        this.unmapped = corpus.getClasses().get(Corpus.UNMAPPED);
+    }
+
+    @Benchmark
+    public byte[] remapMapped() throws IOException {
+        return this.remapper.remap(this.mapped);
+    }
+
+    @Benchmark
+    public byte[] remapUnmapped() throws IOException {
+        return this.remapper.remap(this.unmapped);
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.benchmark;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_SUPER;
+import static org.objectweb.asm.Opcodes.ACONST_NULL;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ICONST_1;
+import static org.objectweb.asm.Opcodes.ILOAD;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
+import static org.objectweb.asm.Opcodes.IRETURN;
+import static org.objectweb.asm.Opcodes.POP;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.V1_6;
+
+import blue.lapis.methodremapper.provider.ClassProvider;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.io.Closer;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A synthetic class corpus used by the benchmarks. It consists of a number of
+ * base classes declaring methods of which every second one is mapped, and
+ * classes extending them (or each other) that override some of the methods
+ * and invoke random methods of the other classes. Additionally, it contains
+ * the {@link #UNMAPPED} class that doesn't need to be remapped at all.
+ *
+ * <p>The corpus is generated using a fixed seed, so it is the same for every
+ * benchmark run.</p>
+ */
+final class Corpus implements ClassProvider {
+
+    static final String PACKAGE = "bench/";
+    static final String DESC = "(I)I";
+    static final String UNMAPPED = PACKAGE + "Unmapped";
+
+    private static final long SEED = 0x52454D4150L;
+    private static final int BASE_CLASSES = 32;
+    private static final int METHODS_PER_BASE = 8;
+    private static final int OVERRIDES = 2;
+    private static final int INVOCATIONS = 16;
+
+    private final Map<String, byte[]> classes;
+    private final ImmutableTable<String, String, String> mappings;
+
+    private Corpus(Map<String, byte[]> classes, ImmutableTable<String, String, String> mappings) {
+        this.classes = classes;
+        this.mappings = mappings;
+    }
+
+    Map<String, byte[]> getClasses() {
+        return this.classes;
+    }
+
+    ImmutableTable<String, String, String> getMappings() {
+        return this.mappings;
+    }
+
+    @Override
+    public ClassReader getClass(String name) throws IOException {
+        byte[] bytes = this.classes.get(name);
+        return bytes != null ? new ClassReader(bytes) : null;
+    }
+
+    /**
+     * Writes all classes of the corpus to a JAR file.
+     *
+     * @param file The file to write the JAR to
+     * @throws IOException If an error occurs while writing the file
+     */
+    void writeJar(File file) throws IOException {
+        Closer closer = Closer.create();
+        try {
+            ZipOutputStream out = closer.register(new ZipOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file))));
+            for (Map.Entry<String, byte[]> entry : this.classes.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey() + ".class"));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        } catch (Throwable e) {
+            throw closer.rethrow(e);
+        } finally {
+            closer.close();
+        }
+    }
+
+    /**
+     * Generates a new corpus with the specified amount of classes (in
+     * addition to the base classes).
+     *
+     * @param count The amount of classes to generate
+     * @return The generated corpus
+     */
+    static Corpus generate(int count) {
+        checkArgument(count > 0, "count must be positive");
+
+        Random random = new Random(SEED);
+        Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+        ImmutableTable.Builder<String, String, String> mappings = ImmutableTable.builder();
+
+        String[] names = new String[BASE_CLASSES + count];
+        for (int i = 0; i < BASE_CLASSES; i++) {
+            String name = names[i] = PACKAGE + "Base" + i;
+
+            ClassWriter writer = createClass(name, "java/lang/Object");
+            for (int j = 0; j < METHODS_PER_BASE; j++) {
+                String method = getMethodName(j);
+                addMethod(writer, method);
+                if (j % 2 == 0) {
+                    mappings.put(name, method + DESC, method + "Mapped");
+                }
+            }
+
+            writer.visitEnd();
+            classes.put(name, writer.toByteArray());
+        }
+
+        for (int i = BASE_CLASSES; i < names.length; i++) {
+            // Extend one of the previous classes to build up deeper hierarchies
+            String superName = names[random.nextInt(i)];
+            String name = names[i] = PACKAGE + "Class" + i;
+
+            ClassWriter writer = createClass(name, superName);
+            for (int j = 0; j < OVERRIDES; j++) {
+                addMethod(writer, getMethodName(random.nextInt(METHODS_PER_BASE)));
+            }
+
+            MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "run", "()V", null, null);
+            mv.visitCode();
+            for (int j = 0; j < INVOCATIONS; j++) {
+                mv.visitInsn(ACONST_NULL);
+                mv.visitInsn(ICONST_1);
+                mv.visitMethodInsn(INVOKEVIRTUAL, names[random.nextInt(i)],
+                        getMethodName(random.nextInt(METHODS_PER_BASE)), DESC, false);
+                mv.visitInsn(POP);
+            }
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+
+            writer.visitEnd();
+            classes.put(name, writer.toByteArray());
+        }
+
+        ClassWriter writer = createClass(UNMAPPED, "java/lang/Object");
+        addMethod(writer, "unmapped");
+        writer.visitEnd();
+        classes.put(UNMAPPED, writer.toByteArray());
+
+        return new Corpus(classes, mappings.build());
+    }
+
+    private static String getMethodName(int index) {
+        return "method" + index;
+    }
+
+    private static ClassWriter createClass(String name, String superName) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(V1_6, ACC_PUBLIC | ACC_SUPER, name, null, superName, null);
+
+        MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        return writer;
+    }
+
+    private static void addMethod(ClassWriter writer, String name) {
+        MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, name, DESC, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.benchmark;
+
+import blue.lapis.methodremapper.JarRemapper;
+import blue.lapis.methodremapper.Remapper;
+import blue.lapis.methodremapper.provider.ZipClassProvider;
+import blue.lapis.methodremapper.zip.RawZipFile;
+import blue.lapis.methodremapper.zip.ZipWriter;
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+/**
+ * Measures the throughput of remapping a complete JAR file with the
+ * {@link JarRemapper}, with a cold hierarchy cache (a new {@link Remapper} for
+ * every JAR) and a warm one (the same {@link Remapper} for all JARs).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JarRemapBenchmark {
+
+    @Param({"1000", "10000"})
+    private int classes;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private File file;
+    private Corpus corpus;
+    private ZipFile zip;
+    private RawZipFile rawZip;
+    private ExecutorService executor;
+
+    private Remapper warmRemapper;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.corpus = Corpus.generate(this.classes);
+        this.file = File.createTempFile("remap-benchmark", ".jar");
+        this.corpus.writeJar(this.file);
+
+        this.zip = new ZipFile(this.file);
+        this.rawZip = new RawZipFile(this.file);
+        if (this.threads > 1) {
+            this.executor = Executors.newFixedThreadPool(this.threads);
+        }
+
+        this.warmRemapper = createRemapper();
+        remap(this.warmRemapper);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+
+        this.rawZip.close();
+        this.zip.close();
+        this.file.delete();
+    }
+
+    private Remapper createRemapper() {
+        return new Remapper(new ZipClassProvider(this.zip), this.corpus.getMappings());
+    }
+
+    private void remap(Remapper remapper) throws IOException {
+        ZipWriter out = new ZipWriter(ByteStreams.nullOutputStream());
+        try {
+            new JarRemapper(remapper, this.executor, this.threads).remap(this.rawZip, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Benchmark
+    public void remapCold() throws IOException {
+        remap(createRemapper());
+    }
+
+    @Benchmark
+    public void remapWarm() throws IOException {
+        remap(this.warmRemapper);
+    }
+
+}
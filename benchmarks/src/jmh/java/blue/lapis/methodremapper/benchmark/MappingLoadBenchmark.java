@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.benchmark;
+
+import static com.google.common.base.Charsets.UTF_8;
+
+import blue.lapis.methodremapper.BinaryMappings;
+import blue.lapis.methodremapper.Mappings;
+import blue.lapis.methodremapper.RemapperConfig;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.io.Closer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time needed to load mapping files of different sizes, both in
+ * the text format of {@link RemapperConfig} and the binary format of
+ * {@link BinaryMappings}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MappingLoadBenchmark {
+
+    private static final int METHODS_PER_CLASS = 10;
+
+    @Param({"1000", "10000", "100000"})
+    private int mappings;
+
+    private File textFile;
+    private File binaryFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ImmutableTable.Builder<String, String, String> builder = ImmutableTable.builder();
+        this.textFile = File.createTempFile("remap-benchmark", ".txt");
+
+        Closer closer = Closer.create();
+        try {
+            Writer writer = closer.register(new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(this.textFile), UTF_8)));
+            for (int i = 0; i < this.mappings; i++) {
+                String owner = Corpus.PACKAGE + "Class" + (i / METHODS_PER_CLASS);
+                String method = "method" + (i % METHODS_PER_CLASS) + Corpus.DESC;
+                String mapping = "mapped" + i;
+
+                builder.put(owner, method, mapping);
+                writer.write(owner + ' ' + method + ' ' + mapping + '\n');
+            }
+        } catch (Throwable e) {
+            throw closer.rethrow(e);
+        } finally {
+            closer.close();
+        }
+
+        this.binaryFile = File.createTempFile("remap-benchmark", ".bin");
+        BinaryMappings.write(builder.build(), this.binaryFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.textFile.delete();
+        this.binaryFile.delete();
+    }
+
+    @Benchmark
+    public Mappings loadText() throws IOException {
+        return RemapperConfig.load(this.textFile);
+    }
+
+    @Benchmark
+    public Mappings loadBinary() throws IOException {
+        return RemapperConfig.load(this.binaryFile);
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.gradle
+
+import blue.lapis.methodremapper.Mappings
+import blue.lapis.methodremapper.Remapper
+import blue.lapis.methodremapper.provider.ClassProvider
+import blue.lapis.methodremapper.provider.ClasspathProvider
+import blue.lapis.methodremapper.provider.RawZipClassProvider
+import blue.lapis.methodremapper.provider.ZipClassProvider
+
+import com.google.common.hash.HashCode
+import org.gradle.api.logging.Logger
+
+/**
+ * The libraries of a remap task, with the class hierarchy and the resolved
+ * mappings of the library classes from the {@link RemapCache}.
+ *
+ * <p>The resolved mappings of library classes are shared by all tasks with
+ * the same mappings and libraries. Only classes whose complete hierarchy is
+ * defined by the libraries or the Java runtime are added to them, so they
+ * don't depend on the JAR that is being remapped.</p>
+ */
+class CachedClasspath {
+
+    private static final String JAVA_PACKAGE = 'java/'
+
+    final List<Entry> entries
+    private final Map<String, Map<String, String>> seed
+
+    CachedClasspath(List<Entry> entries, Map<String, Map<String, String>> seed) {
+        this.entries = entries
+        this.seed = seed
+    }
+
+    void addTo(ClasspathProvider.Builder builder) {
+        for (def entry : entries) {
+            if (entry.index != null) {
+                builder.add(new LibraryProvider(entry.file, entry.index), entry.names)
+            } else {
+                builder.add(entry.file)
+            }
+        }
+    }
+
+    Mappings seed(Mappings mappings, RawZipClassProvider input, Logger logger) {
+        if (seed.isEmpty()) {
+            return mappings
+        }
+
+        // The resolved mappings can't be used if the JAR replaces classes they depend on
+        for (def entry : input.zip.entries) {
+            def name = entry.name
+            if (!entry.directory && name.endsWith(ZipClassProvider.CLASS_EXTENSION)) {
+                name = name.substring(0, name.length() - ZipClassProvider.CLASS_EXTENSION.length())
+                if (seed.containsKey(name) || entries.any { it.names.contains(name) }) {
+                    logger.info('{} shadows library class {}, resolving library classes again', input.zip.file.name, name)
+                    return mappings
+                }
+            }
+        }
+
+        logger.info('Reusing resolved mappings of {} library classes', seed.size())
+        new SeededMappings(mappings, seed)
+    }
+
+    void update(Remapper remapper, Mappings mappings, ClasspathProvider provider, ClassProvider input) {
+        Map<String, Boolean> independent = [:]
+        for (def entry : remapper.snapshot.entrySet()) {
+            def name = entry.key
+            if (!seed.containsKey(name) && !mappings.contains(name) && isIndependent(name, provider, input, independent)) {
+                seed[name] = entry.value
+            }
+        }
+    }
+
+    // Returns whether the hierarchy of the class is defined completely by the libraries or the Java runtime
+    private static boolean isIndependent(String name, ClasspathProvider provider, ClassProvider input, Map<String, Boolean> cache) {
+        if (name == null || name.startsWith(JAVA_PACKAGE)) {
+            return true // Classes in the java package can only be defined by the Java runtime
+        }
+
+        def result = cache[name]
+        if (result != null) {
+            return result
+        }
+
+        cache[name] = false // Circular class hierarchy
+        result = false
+
+        def source = provider.getSource(name)
+        if (source != null && source != input) {
+            def header = provider.getHeader(name)
+            result = header != null && isIndependent(header.superName, provider, input, cache) &&
+                    header.interfaces.every { isIndependent(it, provider, input, cache) }
+        }
+
+        cache[name] = result
+        result
+    }
+
+    static class Entry {
+
+        final File file
+        final HashCode hash
+        final LibraryIndex index
+        final Set<String> names
+
+        Entry(File file, HashCode hash, LibraryIndex index, Set<String> names) {
+            this.file = file
+            this.hash = hash
+            this.index = index
+            this.names = names
+        }
+
+    }
+
+}
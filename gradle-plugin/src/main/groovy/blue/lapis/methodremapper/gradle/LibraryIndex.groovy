@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.gradle
+
+import blue.lapis.methodremapper.provider.ClassHeader
+import blue.lapis.methodremapper.provider.ZipClassProvider
+
+import com.google.common.collect.ImmutableMap
+
+import java.util.zip.ZipFile
+
+/**
+ * The headers of all classes in a library JAR, cached by the content hash of
+ * the JAR in the {@link RemapCache}.
+ */
+class LibraryIndex {
+
+    final ImmutableMap<String, ClassHeader> headers
+
+    LibraryIndex(ImmutableMap<String, ClassHeader> headers) {
+        this.headers = headers
+    }
+
+    int size() {
+        headers.size()
+    }
+
+    static LibraryIndex read(File file) {
+        def builder = ImmutableMap.<String, ClassHeader>builder()
+        def zip = new ZipFile(file)
+        try {
+            for (def entry : zip.entries()) {
+                def name = entry.name
+                if (!entry.directory && name.endsWith(ZipClassProvider.CLASS_EXTENSION)) {
+                    // Only the header at the start of the class needs to be decompressed
+                    def header = zip.getInputStream(entry).withStream { ClassHeader.read(new BufferedInputStream(it)) }
+                    builder.put(name.substring(0, name.length() - ZipClassProvider.CLASS_EXTENSION.length()), header)
+                }
+            }
+        } finally {
+            zip.close()
+        }
+
+        new LibraryIndex(builder.build())
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.gradle
+
+import blue.lapis.methodremapper.provider.ClassHeader
+import blue.lapis.methodremapper.provider.ClassProvider
+import blue.lapis.methodremapper.provider.HierarchyProvider
+import blue.lapis.methodremapper.provider.ZipClassProvider
+
+import org.objectweb.asm.ClassReader
+
+import java.util.zip.ZipFile
+
+/**
+ * Provides the classes of a library JAR using a cached {@link LibraryIndex},
+ * so the JAR only needs to be opened if a complete class is requested.
+ */
+class LibraryProvider implements ClassProvider, HierarchyProvider {
+
+    final File file
+    final LibraryIndex index
+
+    LibraryProvider(File file, LibraryIndex index) {
+        this.file = file
+        this.index = index
+    }
+
+    @Override
+    ClassReader getClass(String name) throws IOException {
+        if (!index.headers.containsKey(name)) {
+            return null
+        }
+
+        def zip = new ZipFile(file)
+        try {
+            def entry = zip.getEntry(name + ZipClassProvider.CLASS_EXTENSION)
+            return entry != null ? zip.getInputStream(entry).withStream { new ClassReader(it) } : null
+        } finally {
+            zip.close()
+        }
+    }
+
+    @Override
+    ClassHeader getHeader(String name) throws IOException {
+        index.headers[name]
+    }
+
+}
@@ -38,6 +38,7 @@ class MethodRemapperPlugin implements Plugin<Project> {
             task('remap', type: RemapTask) {
                 inputTask = tasks.jar
                 config = sourceSets.main.resources.find { it.name == 'remap.txt' }
+                classpath = sourceSets.main.compileClasspath
             }
             assemble.dependsOn 'remap'
         }
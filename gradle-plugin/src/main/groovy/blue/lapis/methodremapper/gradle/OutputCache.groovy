@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.gradle
+
+import com.google.common.io.Files
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Stores the remapped JAR files (and snapshots) in a directory shared by all
+ * builds, addressed by a hash of all inputs of the remap task. This allows
+ * reusing the output of previous runs on a clean checkout or in another
+ * project with the same inputs.
+ */
+class OutputCache {
+
+    static final String DIRECTORY = 'caches/methodremapper/outputs'
+
+    // Entries that haven't been used for this time are removed when storing new entries
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(7)
+
+    private static final String JAR_EXTENSION = '.jar'
+    private static final String SNAPSHOT_EXTENSION = '.snapshot'
+    private static final String TEMP_EXTENSION = '.tmp'
+
+    final File dir
+
+    OutputCache(File dir) {
+        this.dir = dir
+    }
+
+    boolean restore(String key, File output, File snapshot) {
+        def jar = new File(dir, key + JAR_EXTENSION)
+        def cachedSnapshot = new File(dir, key + SNAPSHOT_EXTENSION)
+        if (!jar.isFile() || (snapshot != null && !cachedSnapshot.isFile())) {
+            return false
+        }
+
+        def now = System.currentTimeMillis()
+        jar.setLastModified(now)
+        try {
+            Files.copy(jar, output)
+            if (snapshot != null) {
+                cachedSnapshot.setLastModified(now)
+                Files.copy(cachedSnapshot, snapshot)
+            }
+        } catch (IOException ignored) {
+            // The entry was removed by another build in the meantime, the outputs are overwritten when remapping again
+            return false
+        }
+
+        true
+    }
+
+    void store(String key, File output, File snapshot) {
+        dir.mkdirs()
+        prune()
+
+        // Store the snapshot first, the entry is only used once the JAR exists
+        if (snapshot != null) {
+            copy(snapshot, new File(dir, key + SNAPSHOT_EXTENSION))
+        }
+        copy(output, new File(dir, key + JAR_EXTENSION))
+    }
+
+    private static void copy(File source, File target) {
+        // Other builds might use the cache at the same time, so only complete files are moved into place
+        def tmp = File.createTempFile(target.name, TEMP_EXTENSION, target.parentFile)
+        try {
+            Files.copy(source, tmp)
+            if (!tmp.renameTo(target)) {
+                target.delete()
+                tmp.renameTo(target)
+            }
+        } finally {
+            tmp.delete()
+        }
+    }
+
+    private void prune() {
+        def limit = System.currentTimeMillis() - MAX_AGE
+        dir.listFiles()?.each { File file ->
+            if (file.lastModified() < limit) {
+                file.delete()
+            }
+        }
+    }
+
+}
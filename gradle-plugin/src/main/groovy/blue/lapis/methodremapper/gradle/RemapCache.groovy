@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.gradle
+
+import blue.lapis.methodremapper.BinaryMappings
+import blue.lapis.methodremapper.Mappings
+import blue.lapis.methodremapper.MappingsLoader
+import blue.lapis.methodremapper.provider.ZipClassProvider
+
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import com.google.common.cache.Weigher
+import com.google.common.hash.HashCode
+import com.google.common.hash.Hashing
+import com.google.common.io.Files
+import groovy.io.FileType
+
+import java.nio.ByteBuffer
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+
+/**
+ * Caches the parsed mapping configurations, the class hierarchy of libraries
+ * and the resolved mappings of library classes for the lifetime of the Gradle
+ * daemon, so they are shared by all remap tasks and reused in the following
+ * builds.
+ *
+ * <p>All entries are addressed by the content hash of the files they were
+ * created from. Only the hashes themselves are cached by the path, size and
+ * modification time of the files, so unchanged files aren't hashed again.
+ * Text mappings are kept by a {@link MappingsLoader} for each configuration,
+ * which only reads the configuration and the files it includes again if one
+ * of them was modified.</p>
+ */
+class RemapCache {
+
+    // The classes of the plugin are reused by the daemon as long as the classpath of the build script doesn't change
+    static final RemapCache instance = new RemapCache()
+
+    // The maximum number of library classes to keep the class headers of
+    private static final long MAX_LIBRARY_CLASSES = 1000000
+
+    private final Cache<String, HashCode> hashes = CacheBuilder.newBuilder().maximumSize(4096).build()
+    private final Cache<HashCode, Mappings> mappings = CacheBuilder.newBuilder().maximumSize(8).softValues().build()
+    private final Cache<String, MappingsLoader> loaders = CacheBuilder.newBuilder().maximumSize(8).softValues().build()
+    private final Cache<HashCode, HashCode> normalized = CacheBuilder.newBuilder().maximumSize(64).build()
+    private final Cache<HashCode, LibraryIndex> libraries = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_LIBRARY_CLASSES)
+            .weigher({ HashCode key, LibraryIndex index -> index.size() } as Weigher)
+            .build()
+    private final Cache<HashCode, ConcurrentMap<String, Map<String, String>>> resolved = CacheBuilder.newBuilder()
+            .maximumSize(16).softValues().build()
+
+    private RemapCache() {
+    }
+
+    HashCode hash(File file) {
+        def key = "$file.absolutePath:${file.length()}:${file.lastModified()}".toString()
+        get(hashes, key) { Files.asByteSource(file).hash(Hashing.sha1()) }
+    }
+
+    Mappings getMappings(File config) {
+        if (isBinary(config)) {
+            // Don't map binary mappings into memory, the file might be replaced while they are cached
+            return get(mappings, hash(config)) { BinaryMappings.load(ByteBuffer.wrap(Files.toByteArray(config))) }
+        }
+
+        getLoader(config).load()
+    }
+
+    // Gets the mapping configuration and all files included by it
+    Set<File> getMappingFiles(File config) {
+        if (isBinary(config)) {
+            return Collections.singleton(config)
+        }
+
+        def loader = getLoader(config)
+        loader.load()
+        loader.sources.collect { new File(it.toURI()) } as LinkedHashSet<File>
+    }
+
+    // Hashes the mapping configuration and all files included by it
+    HashCode hashMappingFiles(File config) {
+        def hasher = Hashing.sha1().newHasher()
+        for (def file : getMappingFiles(config)) {
+            hasher.putBytes(hash(file).asBytes())
+        }
+        hasher.hash()
+    }
+
+    // Hashes the mappings independent of the format, comments and order of the mapping configuration
+    HashCode getMappingsHash(File config) {
+        get(normalized, hashMappingFiles(config)) {
+            def mappings = getMappings(config)
+            def hasher = Hashing.sha1().newHasher()
+            for (def owner : new TreeSet<String>(mappings.owners)) {
+                hasher.putUnencodedChars(owner).putByte((byte) 0)
+                def methods = mappings.get(owner)
+                if (methods != null) {
+                    for (def method : new TreeMap<String, String>(methods).entrySet()) {
+                        hasher.putUnencodedChars(method.key).putByte((byte) 0).putUnencodedChars(method.value).putByte((byte) 0)
+                    }
+                }
+                hasher.putByte((byte) 1)
+            }
+            hasher.hash()
+        }
+    }
+
+    CachedClasspath getClasspath(HashCode mappings, Collection<File> files, boolean runtime, int threads) {
+        def executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())))
+        List<CachedClasspath.Entry> entries
+        try {
+            def futures = files.collect { file -> executor.submit({ getEntry(file) } as Callable<CachedClasspath.Entry>) }
+            entries = futures.collect { future -> unwrap { future.get() } }
+        } finally {
+            executor.shutdownNow()
+        }
+
+        entries.removeAll { it == null }
+
+        // The resolved mappings of the library classes depend on the mappings and the complete classpath
+        def hasher = Hashing.sha1().newHasher()
+                .putBytes(mappings.asBytes())
+                .putBoolean(runtime)
+                .putUnencodedChars(System.getProperty('java.home'))
+        for (def entry : entries) {
+            hasher.putBytes(entry.hash.asBytes())
+        }
+
+        def seed = get(resolved, hasher.hash()) { new ConcurrentHashMap<String, Map<String, String>>() }
+        new CachedClasspath(entries, seed)
+    }
+
+    private CachedClasspath.Entry getEntry(File file) {
+        if (file.directory) {
+            // The classes in the directory are loaded directly, only the hash is needed
+            def hasher = Hashing.sha1().newHasher()
+            def names = new HashSet<String>()
+            def files = []
+            file.eachFileRecurse(FileType.FILES) { files << it }
+            for (File child : files.sort()) {
+                def path = file.toURI().relativize(child.toURI()).path
+                hasher.putUnencodedChars(path).putBytes(Files.toByteArray(child))
+                if (path.endsWith(ZipClassProvider.CLASS_EXTENSION)) {
+                    names << path.substring(0, path.length() - ZipClassProvider.CLASS_EXTENSION.length())
+                }
+            }
+
+            return new CachedClasspath.Entry(file, hasher.hash(), null, names)
+        } else if (file.file) {
+            def hash = hash(file)
+            def index = get(libraries, hash) { LibraryIndex.read(file) }
+            return new CachedClasspath.Entry(file, hash, index, index.headers.keySet())
+        }
+
+        null
+    }
+
+    private MappingsLoader getLoader(File config) {
+        get(loaders, config.canonicalPath) { MappingsLoader.builder().add(config).build() }
+    }
+
+    private static boolean isBinary(File file) {
+        BinaryMappings.isBinary(ByteBuffer.wrap(Files.asByteSource(file).slice(0, 4).read()))
+    }
+
+    private static <K, V> V get(Cache<K, V> cache, K key, Closure<V> loader) {
+        unwrap { cache.get(key, loader as Callable<V>) }
+    }
+
+    private static <T> T unwrap(Closure<T> closure) {
+        try {
+            closure()
+        } catch (ExecutionException e) {
+            throw e.cause
+        }
+    }
+
+}
@@ -23,25 +23,41 @@
 
 package blue.lapis.methodremapper.gradle
 
+import blue.lapis.methodremapper.BinaryMappings
+import blue.lapis.methodremapper.HierarchyResolver
+import blue.lapis.methodremapper.JarRemapper
+import blue.lapis.methodremapper.Mappings
+import blue.lapis.methodremapper.RemapIndex
 import blue.lapis.methodremapper.Remapper
-import blue.lapis.methodremapper.RemapperConfig
+import blue.lapis.methodremapper.metrics.RemapStatistics
+import blue.lapis.methodremapper.provider.ClasspathProvider
+import blue.lapis.methodremapper.provider.RawZipClassProvider
 import blue.lapis.methodremapper.provider.ZipClassProvider
+import blue.lapis.methodremapper.zip.RawZipFile
+import blue.lapis.methodremapper.zip.ZipWriter
 
-import com.google.common.collect.ImmutableTable
+import com.google.common.hash.HashCode
+import com.google.common.hash.Hasher
+import com.google.common.hash.Hashing
 import com.google.common.io.Files
+import org.apache.tools.ant.taskdefs.condition.Os
 import org.gradle.api.DefaultTask
+import org.gradle.api.InvalidUserDataException
+import org.gradle.api.file.FileCollection
+import org.gradle.api.tasks.Input
 import org.gradle.api.tasks.InputFile
+import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.Optional
 import org.gradle.api.tasks.OutputFile
 import org.gradle.api.tasks.TaskAction
 import org.gradle.api.tasks.bundling.AbstractArchiveTask
 
-import java.util.zip.ZipEntry
-import java.util.zip.ZipFile
-import java.util.zip.ZipOutputStream
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 
 class RemapTask extends DefaultTask {
 
-    @InputFile
+    // The mappings are declared as input by their normalized content, see getMappingsHash()
     File config
 
     private File inputJar
@@ -49,45 +65,173 @@ class RemapTask extends DefaultTask {
 
     File outputJar
 
+    // The libraries of the input JAR, used to resolve mappings inherited from library classes
+    @InputFiles @Optional
+    FileCollection classpath
+
+    // Whether to resolve mappings inherited from classes of the Java runtime
+    @Input
+    boolean runtime = true
+
+    // The file to write the resolved mappings of all classes to, for remapping at runtime without loading the class hierarchy
+    @OutputFile @Optional
+    File snapshot
+
+    // The number of threads used to remap the classes, 1 to remap them sequentially
+    int threads = Runtime.runtime.availableProcessors()
+
+    // Whether to remap only the classes that have changed since the last run
+    boolean incremental = true
+
+    // Whether to reuse the output of previous runs with the same inputs from the cache in the Gradle user home
+    boolean cacheOutputs = true
+
     @TaskAction
     public void remap() throws IOException {
-        ImmutableTable<String, String, String> mappings = RemapperConfig.loadMappings(this.config);
+        // Parsed mappings and library classes are shared with other tasks and builds in the same daemon
+        def cache = RemapCache.instance
+        def configHash = cache.getMappingsHash(configFile)
+        Mappings mappings = cache.getMappings(configFile)
 
         def inputJar = getInputJar()
         def outputJar = getOutputJar()
+        def libraries = cache.getClasspath(configHash, classpath?.files ?: [], runtime, Math.max(threads, 1))
 
-        def tmp = outputJar
-        if (inputJar == outputJar) {
-            tmp = new File(temporaryDir, outputJar.name)
+        def outputCache = null
+        String cacheKey = null
+        if (cacheOutputs) {
+            outputCache = new OutputCache(new File(project.gradle.gradleUserHomeDir, OutputCache.DIRECTORY))
+            cacheKey = getCacheKey(cache, configHash, inputJar, libraries)
+            if (outputCache.restore(cacheKey, outputJar, snapshot)) {
+                logger.info('Restored remapped {} from cache', inputJar.name)
+                return
+            }
         }
 
-        def zip = new ZipFile(inputJar)
+        // Keep the output of the last run if the input JAR is replaced, so it can be reused in the next run
+        def last = inputJar == outputJar ? new File(temporaryDir, outputJar.name) : outputJar
+        def tmp = new File(temporaryDir, outputJar.name + '.tmp')
+
+        def indexFile = new File(temporaryDir, 'remap.index')
+        // The index is only valid for the same mappings, libraries and runtime
+        def key = hashEnvironment(configHash, libraries).hash().toString()
+        RemapIndex index = incremental ? RemapIndex.load(indexFile, key, last) : null
+        indexFile.delete()
+
+        def statistics = new RemapStatistics()
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null
+        // Mapped files can't be replaced on Windows until the mapping is garbage collected
+        def raw = new RawZipFile(inputJar, !Os.isFamily(Os.FAMILY_WINDOWS))
+        def previous = index != null ? new RawZipFile(last) : null
+        ClasspathProvider provider = null
         try {
-            new ZipOutputStream(tmp.newOutputStream()).withStream { ZipOutputStream out ->
-                def loader = new ZipClassProvider(zip)
-                def remapper = new Remapper(loader, mappings)
-
-                zip.entries().each {
-                    ZipEntry entryOut = new ZipEntry(it)
-                    if (!it.directory && it.name.endsWith(ZipClassProvider.CLASS_EXTENSION)) {
-                        def bytes = remapper.remap(loader.getClassFile(it))
-                        entryOut.size = bytes.length
-                        entryOut.compressedSize = -1
-                        out.putNextEntry(entryOut)
-                        out.write(bytes)
-                    } else {
-                        out.putNextEntry(entryOut)
-                        out << zip.getInputStream(it)
-                    }
+            def input = new RawZipClassProvider(raw)
+
+            def builder = ClasspathProvider.builder().add(input).threads(Math.max(threads, 1))
+            libraries.addTo(builder)
+            if (runtime) {
+                builder.addRuntime()
+            }
+            provider = builder.build()
+
+            def out = new ZipWriter(new FileOutputStream(tmp))
+            try {
+                def remapper = new Remapper(provider, libraries.seed(mappings, input, logger), statistics)
+                // Resolve the class hierarchy of all classes in the JAR up front, in parallel
+                new HierarchyResolver(remapper, executor, Math.max(threads, 1)).resolve(raw)
+                def jarRemapper = new JarRemapper(remapper, executor, Math.max(threads, 1))
+                if (incremental) {
+                    index = jarRemapper.remapIncremental(raw, out, key, index, previous)
+                } else {
+                    jarRemapper.remap(raw, out)
+                }
+
+                if (snapshot != null) {
+                    writeSnapshot(remapper, raw)
                 }
+
+                libraries.update(remapper, mappings, provider, input)
+            } finally {
+                out.close()
             }
         } finally {
-            zip.close()
+            executor?.shutdownNow()
+            provider?.close()
+            previous?.close()
+            raw.close()
+        }
+
+        Files.move(tmp, last)
+        if (last != outputJar) {
+            Files.copy(last, outputJar)
+        }
+
+        index?.save(indexFile, last)
+        outputCache?.store(cacheKey, outputJar, snapshot)
+
+        logger.info("Remapped {}: {}", inputJar.name, statistics)
+    }
+
+    private String getCacheKey(RemapCache cache, HashCode mappings, File inputJar, CachedClasspath libraries) {
+        hashEnvironment(mappings, libraries)
+                .putBytes(cache.hash(inputJar).asBytes())
+                .putBoolean(snapshot != null)
+                .hash().toString()
+    }
+
+    // Hashes everything except the input JAR that affects the remapped classes
+    private Hasher hashEnvironment(HashCode mappings, CachedClasspath libraries) {
+        def hasher = Hashing.sha1().newHasher()
+                .putUnencodedChars(getRemapperVersion())
+                .putUnencodedChars(getRuntimeVersion())
+                .putBytes(mappings.asBytes())
+        for (def entry : libraries.entries) {
+            hasher.putBytes(entry.hash.asBytes())
         }
+        hasher
+    }
 
-        if (tmp != outputJar) {
-            Files.copy(tmp, outputJar)
+    // Changes to the comments or the order of the mappings don't change the result
+    @Input
+    String getMappingsHash() {
+        RemapCache.instance.getMappingsHash(configFile).toString()
+    }
+
+    // The config isn't declared as input file, so Gradle doesn't check if it is set
+    private File getConfigFile() {
+        if (config == null) {
+            throw new InvalidUserDataException("No mapping configuration specified for task '$name', "
+                    + "set 'config' or add remap.txt to the resources of the main source set")
         }
+        config
+    }
+
+    @Input
+    String getRemapperVersion() {
+        def version = Remapper.package?.implementationVersion ?: 'unknown'
+
+        // Include the hash of the remapper JAR to distinguish different builds of snapshot versions
+        def source = Remapper.protectionDomain.codeSource?.location
+        def file = source != null && source.protocol == 'file' ? new File(source.toURI()) : null
+        file?.isFile() ? "$version-${RemapCache.instance.hash(file)}" : version
+    }
+
+    // The inherited mappings depend on the classes of the Java runtime
+    @Input
+    String getRuntimeVersion() {
+        runtime ? "${System.getProperty('java.vendor')} ${System.getProperty('java.version')}" : ''
+    }
+
+    private void writeSnapshot(Remapper remapper, RawZipFile zip) {
+        // Resolve all classes in the JAR, including the ones that didn't need to be remapped
+        for (def entry : zip.entries) {
+            def name = entry.name
+            if (!entry.directory && name.endsWith(ZipClassProvider.CLASS_EXTENSION)) {
+                remapper.getMappings(name.substring(0, name.length() - ZipClassProvider.CLASS_EXTENSION.length()))
+            }
+        }
+
+        BinaryMappings.write(remapper.snapshot, snapshot)
     }
 
     @InputFile
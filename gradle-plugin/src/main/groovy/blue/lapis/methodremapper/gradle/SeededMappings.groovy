@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.gradle
+
+import blue.lapis.methodremapper.Mappings
+
+import com.google.common.collect.Sets
+
+/**
+ * Adds the resolved mappings of library classes from a previous build to the
+ * mapping configuration. The resolved mappings already contain the inherited
+ * mappings, so the library classes don't need to be loaded again.
+ */
+class SeededMappings implements Mappings {
+
+    final Mappings mappings
+    final Map<String, Map<String, String>> seed
+
+    SeededMappings(Mappings mappings, Map<String, Map<String, String>> seed) {
+        this.mappings = mappings
+        this.seed = seed
+    }
+
+    @Override
+    boolean contains(String owner) {
+        mappings.contains(owner) || seed.containsKey(owner)
+    }
+
+    @Override
+    Map<String, String> get(String owner) {
+        mappings.contains(owner) ? mappings.get(owner) : seed[owner]
+    }
+
+    @Override
+    Set<String> getOwners() {
+        Sets.union(mappings.owners, seed.keySet())
+    }
+
+    @Override
+    boolean hasMappingsWithPrefix(String prefix) {
+        mappings.hasMappingsWithPrefix(prefix) || seed.any { owner, methods -> owner.startsWith(prefix) && methods }
+    }
+
+    @Override
+    Set<String> getMethodNames() {
+        // The resolved mappings only contain methods of the mapping configuration
+        mappings.methodNames
+    }
+
+}
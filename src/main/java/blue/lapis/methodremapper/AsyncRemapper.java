@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import blue.lapis.methodremapper.provider.ClasspathProvider;
+import blue.lapis.methodremapper.provider.RawZipClassProvider;
+import blue.lapis.methodremapper.zip.RawZipFile;
+import blue.lapis.methodremapper.zip.ZipWriter;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.objectweb.asm.ClassReader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Provides an asynchronous API for a {@link Remapper}, returning a
+ * {@link ListenableFuture} for each remapped class or JAR file.
+ *
+ * <p>Loading classes from the {@link blue.lapis.methodremapper.provider.ClassProvider}
+ * and reading and writing JAR files happens on the I/O executor, while the
+ * classes are remapped on the CPU executor, so the I/O of one class overlaps
+ * with remapping the others.</p>
+ *
+ * <p>The number of pending tasks is limited: If too many classes or JAR files
+ * are being remapped, submitting more of them blocks until some of them have
+ * completed. All returned futures can be cancelled, which interrupts the task
+ * if it is already running.</p>
+ */
+public class AsyncRemapper {
+
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+    };
+
+    private final Remapper remapper;
+    private final ListeningExecutorService ioExecutor;
+    private final ListeningExecutorService cpuExecutor;
+    private final int cpuThreads;
+    private final Semaphore pending;
+
+    /**
+     * Creates a new {@link AsyncRemapper}.
+     *
+     * @param remapper The remapper to use
+     * @param ioExecutor The executor to load classes and read and write JAR
+     *        files on
+     * @param cpuExecutor The executor to remap the classes on, must be
+     *        different from the I/O executor since JAR tasks wait for the
+     *        classes they contain
+     * @param cpuThreads The number of threads used by the CPU executor
+     * @param maxPending The maximum number of classes and JAR files that are
+     *        remapped at the same time
+     */
+    public AsyncRemapper(Remapper remapper, ExecutorService ioExecutor, ExecutorService cpuExecutor, int cpuThreads,
+            int maxPending) {
+        checkArgument(ioExecutor != cpuExecutor, "ioExecutor and cpuExecutor must be different");
+        checkArgument(cpuThreads > 0, "cpuThreads must be positive");
+        checkArgument(maxPending > 0, "maxPending must be positive");
+        this.remapper = checkNotNull(remapper, "remapper");
+        this.ioExecutor = MoreExecutors.listeningDecorator(checkNotNull(ioExecutor, "ioExecutor"));
+        this.cpuExecutor = MoreExecutors.listeningDecorator(checkNotNull(cpuExecutor, "cpuExecutor"));
+        this.cpuThreads = cpuThreads;
+        this.pending = new Semaphore(maxPending);
+    }
+
+    /**
+     * Gets the {@link Remapper} of this {@link AsyncRemapper}.
+     *
+     * @return The remapper
+     */
+    public Remapper getRemapper() {
+        return this.remapper;
+    }
+
+    /**
+     * Remaps the specified class asynchronously. Blocks if the maximum number
+     * of pending tasks is reached.
+     *
+     * @param bytes The class bytes to remap
+     * @return A future for the remapped class
+     * @throws InterruptedException If interrupted while waiting for other
+     *         tasks to complete
+     * @see Remapper#remap(byte[])
+     */
+    public ListenableFuture<byte[]> remap(final byte[] bytes) throws InterruptedException {
+        checkNotNull(bytes, "bytes");
+        this.pending.acquire();
+        return release(this.cpuExecutor.submit(new Callable<byte[]>() {
+
+            @Override
+            public byte[] call() throws IOException {
+                return remapper.remap(bytes);
+            }
+
+        }));
+    }
+
+    /**
+     * Loads the specified class from the class provider of the remapper and
+     * remaps it asynchronously. Blocks if the maximum number of pending tasks
+     * is reached.
+     *
+     * @param name The name of the class to remap in internal format
+     * @return A future for the remapped class
+     * @throws InterruptedException If interrupted while waiting for other
+     *         tasks to complete
+     * @see Remapper#remap(String)
+     */
+    public ListenableFuture<byte[]> remap(final String name) throws InterruptedException {
+        checkNotNull(name, "name");
+        this.pending.acquire();
+
+        final SettableFuture<byte[]> result = SettableFuture.create();
+        final ListenableFuture<ClassReader> load = this.ioExecutor.submit(new Callable<ClassReader>() {
+
+            @Override
+            public ClassReader call() throws IOException {
+                ClassReader reader = remapper.getProvider().getClass(name);
+                if (reader == null) {
+                    throw new IOException("Class not found: " + name);
+                }
+
+                return reader;
+            }
+
+        });
+
+        forward(load, result, new Continuation<ClassReader>() {
+
+            @Override
+            public ListenableFuture<byte[]> apply(final ClassReader reader) {
+                return cpuExecutor.submit(new Callable<byte[]>() {
+
+                    @Override
+                    public byte[] call() throws IOException {
+                        return remapper.remap(reader);
+                    }
+
+                });
+            }
+
+        });
+
+        return release(result);
+    }
+
+    /**
+     * Remaps all specified classes asynchronously. Blocks if the maximum
+     * number of pending tasks is reached, until all classes were submitted.
+     * Cancelling the returned future cancels the remapping of all classes.
+     *
+     * @param classes The class bytes to remap
+     * @return A future for the remapped classes, in the same order
+     * @throws InterruptedException If interrupted while waiting for other
+     *         tasks to complete
+     */
+    public ListenableFuture<List<byte[]>> remapAll(Iterable<byte[]> classes) throws InterruptedException {
+        List<ListenableFuture<byte[]>> futures = Lists.newArrayList();
+        try {
+            for (byte[] bytes : classes) {
+                futures.add(remap(bytes));
+            }
+        } catch (InterruptedException e) {
+            cancel(futures);
+            throw e;
+        }
+
+        return Futures.allAsList(futures);
+    }
+
+    /**
+     * Remaps the specified JAR file asynchronously using a
+     * {@link JarRemapper}. Blocks if the maximum number of pending tasks is
+     * reached.
+     *
+     * <p>Classes in the JAR file may inherit mappings from each other, so
+     * each JAR file is remapped using a separate {@link Remapper}, which looks
+     * up classes in the JAR file before the class provider of the remapper of
+     * this {@link AsyncRemapper}. The mappings resolved for a JAR file are
+     * therefore not shared with the other JAR files.</p>
+     *
+     * <p>The remapped JAR file is written to a temporary file next to the
+     * output first, which is only moved to the output once remapping
+     * succeeded.</p>
+     *
+     * @param input The JAR file to remap
+     * @param output The file to write the remapped JAR file to
+     * @return A future for the output file
+     * @throws InterruptedException If interrupted while waiting for other
+     *         tasks to complete
+     */
+    public ListenableFuture<File> remapJar(final File input, final File output) throws InterruptedException {
+        checkNotNull(input, "input");
+        checkNotNull(output, "output");
+        this.pending.acquire();
+        return release(this.ioExecutor.submit(new Callable<File>() {
+
+            @Override
+            public File call() throws IOException {
+                RawZipFile zip = new RawZipFile(input);
+                try {
+                    ClasspathProvider provider = ClasspathProvider.builder()
+                            .add(new RawZipClassProvider(zip))
+                            .parent(remapper.getProvider())
+                            .threads(1)
+                            .build();
+                    File temp = new File(output.getPath() + TEMP_EXTENSION);
+                    boolean success = false;
+                    try {
+                        ZipWriter out = new ZipWriter(new FileOutputStream(temp));
+                        try {
+                            new JarRemapper(new Remapper(remapper, provider), cpuExecutor, cpuThreads).remap(zip, out);
+                        } finally {
+                            out.close();
+                        }
+
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedIOException("Remapping of " + input + " was cancelled");
+                        }
+
+                        Files.move(temp, output);
+                        success = true;
+                    } finally {
+                        if (!success) {
+                            temp.delete(); // Don't leave a truncated JAR file behind
+                        }
+                        provider.close();
+                    }
+                } finally {
+                    zip.close();
+                }
+
+                return output;
+            }
+
+        }));
+    }
+
+    /**
+     * Remaps all specified JAR files asynchronously. Blocks if the maximum
+     * number of pending tasks is reached, until all JAR files were submitted.
+     * Cancelling the returned future cancels the remapping of all JAR files.
+     *
+     * @param inputs The JAR files to remap
+     * @param outputs The files to write the remapped JAR files to, in the same
+     *        order
+     * @return A future for the output files
+     * @throws InterruptedException If interrupted while waiting for other
+     *         tasks to complete
+     */
+    public ListenableFuture<List<File>> remapJars(List<File> inputs, List<File> outputs) throws InterruptedException {
+        checkArgument(inputs.size() == outputs.size(), "inputs and outputs must have the same size");
+        List<ListenableFuture<File>> futures = Lists.newArrayListWithCapacity(inputs.size());
+        try {
+            for (int i = 0; i < inputs.size(); i++) {
+                futures.add(remapJar(inputs.get(i), outputs.get(i)));
+            }
+        } catch (InterruptedException e) {
+            cancel(futures);
+            throw e;
+        }
+
+        return Futures.allAsList(futures);
+    }
+
+    private <T> ListenableFuture<T> release(ListenableFuture<T> future) {
+        future.addListener(new Runnable() {
+
+            @Override
+            public void run() {
+                pending.release();
+            }
+
+        }, DIRECT_EXECUTOR);
+        return future;
+    }
+
+    private static void cancel(List<? extends ListenableFuture<?>> futures) {
+        for (ListenableFuture<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private interface Continuation<T> {
+
+        ListenableFuture<byte[]> apply(T input);
+
+    }
+
+    // Completes the result with the future returned by the function once the input is available
+    private static <T> void forward(final ListenableFuture<T> input, final SettableFuture<byte[]> result,
+            final Continuation<T> function) {
+        input.addListener(new Runnable() {
+
+            @Override
+            public void run() {
+                final ListenableFuture<byte[]> next;
+                try {
+                    next = function.apply(Uninterruptibles.getUninterruptibly(input));
+                } catch (ExecutionException e) {
+                    result.setException(e.getCause());
+                    return;
+                } catch (CancellationException e) {
+                    result.cancel(false);
+                    return;
+                } catch (RuntimeException e) {
+                    result.setException(e);
+                    return;
+                }
+
+                next.addListener(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            result.set(Uninterruptibles.getUninterruptibly(next));
+                        } catch (ExecutionException e) {
+                            result.setException(e.getCause());
+                        } catch (CancellationException e) {
+                            result.cancel(false);
+                        }
+                    }
+
+                }, DIRECT_EXECUTOR);
+                cancelWith(result, next);
+            }
+
+        }, DIRECT_EXECUTOR);
+        cancelWith(result, input);
+    }
+
+    // Cancels the future if the result was cancelled
+    private static void cancelWith(final ListenableFuture<?> result, final ListenableFuture<?> future) {
+        result.addListener(new Runnable() {
+
+            @Override
+            public void run() {
+                if (result.isCancelled()) {
+                    future.cancel(true);
+                }
+            }
+
+        }, DIRECT_EXECUTOR);
+    }
+
+}
@@ -0,0 +1,497 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.collect.UnmodifiableIterator;
+import com.google.common.io.Resources;
+import com.google.common.primitives.UnsignedBytes;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+
+/**
+ * Represents {@link Mappings} stored in a compact binary format. The binary
+ * format is loaded using a memory-mapped {@link ByteBuffer}, so loading it
+ * doesn't require parsing the whole file and the mappings of a class are only
+ * decoded once they are requested.
+ *
+ * <p>The binary format consists out of an interned string table, the owning
+ * classes sorted by name with the index of their first mapping and the
+ * mappings themselves. Binary mappings can be created from the text format
+ * using {@link #write(ImmutableTable, File)}.</p>
+ */
+public final class BinaryMappings implements Mappings {
+
+    static final int MAGIC = 0x524D4150; // RMAP
+    private static final int VERSION = 1;
+
+    private static final Comparator<byte[]> COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+    private final ByteBuffer buffer;
+
+    private final int stringOffsets;
+    private final int strings;
+    private final int ownerCount;
+    private final int owners;
+    private final int mappings;
+
+    private final ImmutableSet<String> methodNames;
+    private final Set<String> ownerSet = new OwnerSet();
+
+    private BinaryMappings(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Invalid binary mappings");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported binary mappings version: " + buffer.getInt(4));
+        }
+
+        int pos = 8;
+        int stringCount = buffer.getInt(pos);
+        this.stringOffsets = pos + 4;
+        pos = this.stringOffsets + (stringCount + 1) * 4;
+
+        this.ownerCount = buffer.getInt(pos);
+        this.owners = pos + 4;
+        pos = this.owners + (this.ownerCount + 1) * 8; // Owner string and first mapping, followed by the end of the last owner
+
+        int mappingCount = buffer.getInt(pos - 4);
+        this.mappings = pos;
+        pos = this.mappings + mappingCount * 8;
+
+        int methodNameCount = buffer.getInt(pos);
+        pos += 4;
+        this.strings = pos + methodNameCount * 4;
+
+        ImmutableSet.Builder<String> methodNames = ImmutableSet.builder();
+        for (int i = 0; i < methodNameCount; i++) {
+            methodNames.add(getString(buffer.getInt(pos + i * 4)));
+        }
+        this.methodNames = methodNames.build();
+    }
+
+    private int getStringStart(int index) {
+        return this.strings + this.buffer.getInt(this.stringOffsets + index * 4);
+    }
+
+    private String getString(int index) {
+        int start = getStringStart(index);
+        byte[] bytes = new byte[getStringStart(index + 1) - start];
+        ByteBuffer buf = this.buffer.duplicate();
+        buf.position(start);
+        buf.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private int compare(byte[] key, int index) {
+        int start = getStringStart(index);
+        int length = getStringStart(index + 1) - start;
+        for (int i = 0, end = Math.min(key.length, length); i < end; i++) {
+            int result = (key[i] & 0xFF) - (this.buffer.get(start + i) & 0xFF);
+            if (result != 0) {
+                return result;
+            }
+        }
+
+        return key.length - length;
+    }
+
+    // Returns the index of the owner, or a negative value if not found
+    private int findOwner(String owner) {
+        byte[] key = owner.getBytes(UTF_8);
+        int low = 0;
+        int high = this.ownerCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int result = compare(key, this.buffer.getInt(this.owners + mid * 8));
+            if (result > 0) {
+                low = mid + 1;
+            } else if (result < 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+
+    // Returns the index of the first owner that is equal to or sorted after the key
+    private int findFirstOwner(byte[] key) {
+        int low = 0;
+        int high = this.ownerCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(key, this.buffer.getInt(this.owners + mid * 8)) > 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private boolean startsWith(int index, byte[] prefix) {
+        int start = getStringStart(index);
+        if (getStringStart(index + 1) - start < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (this.buffer.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean contains(String owner) {
+        return findOwner(owner) >= 0;
+    }
+
+    @Override
+    public boolean hasMappingsWithPrefix(String prefix) {
+        byte[] key = prefix.getBytes(UTF_8);
+
+        // Snapshots also contain the classes without mappings, so check the number of mappings of all owners with the prefix
+        for (int i = findFirstOwner(key); i < this.ownerCount; i++) {
+            int pos = this.owners + i * 8;
+            if (!startsWith(this.buffer.getInt(pos), key)) {
+                break;
+            }
+
+            if (this.buffer.getInt(pos + 12) > this.buffer.getInt(pos + 4)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public Map<String, String> get(String owner) {
+        int index = findOwner(owner);
+        if (index < 0) {
+            return null;
+        }
+
+        int start = this.buffer.getInt(this.owners + index * 8 + 4);
+        int end = this.buffer.getInt(this.owners + index * 8 + 12);
+
+        ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+        for (int i = start; i < end; i++) {
+            int pos = this.mappings + i * 8;
+            builder.put(getString(this.buffer.getInt(pos)), getString(this.buffer.getInt(pos + 4)));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Set<String> getOwners() {
+        return this.ownerSet;
+    }
+
+    @Override
+    public Set<String> getMethodNames() {
+        return this.methodNames;
+    }
+
+    /**
+     * Returns whether the specified buffer starts with the header of the
+     * binary mapping format.
+     *
+     * @param buffer The buffer to check
+     * @return {@code true} if the buffer contains binary mappings
+     */
+    public static boolean isBinary(ByteBuffer buffer) {
+        return buffer.remaining() >= 4 && buffer.getInt(buffer.position()) == MAGIC;
+    }
+
+    /**
+     * Loads binary mappings from the specified {@link ByteBuffer}. The buffer
+     * must not be modified afterwards.
+     *
+     * @param buffer The buffer to load the mappings from
+     * @return The loaded mappings
+     * @throws IOException If the buffer doesn't contain valid binary mappings
+     */
+    public static BinaryMappings load(ByteBuffer buffer) throws IOException {
+        return new BinaryMappings(buffer.slice());
+    }
+
+    /**
+     * Loads binary mappings from the specified {@link File} by mapping it
+     * into memory.
+     *
+     * @param file The file to load the mappings from
+     * @return The loaded mappings
+     * @throws IOException If the file couldn't be read or doesn't contain
+     *         valid binary mappings
+     */
+    public static BinaryMappings load(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            // The mapping stays valid after the channel was closed
+            return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Loads binary mappings from the specified {@link URL} (resource). Files
+     * are mapped into memory, all other resources are read into memory.
+     *
+     * @param resource The resource to load the mappings from
+     * @return The loaded mappings
+     * @throws IOException If the resource couldn't be read or doesn't contain
+     *         valid binary mappings
+     */
+    public static BinaryMappings load(URL resource) throws IOException {
+        if (resource.getProtocol().equals("file")) {
+            try {
+                return load(new File(resource.toURI()));
+            } catch (URISyntaxException ignored) {
+            }
+        }
+
+        return load(ByteBuffer.wrap(Resources.toByteArray(resource)));
+    }
+
+    /**
+     * Writes the specified mappings to a {@link File} in the binary format.
+     *
+     * @param mappings The mappings to write
+     * @param file The file to write the mappings to
+     * @throws IOException If writing the mappings fails
+     */
+    public static void write(ImmutableTable<String, String, String> mappings, File file) throws IOException {
+        write(checkNotNull(mappings, "mappings").rowMap(), file);
+    }
+
+    /**
+     * Writes the specified mappings to a {@link File} in the binary format.
+     * Classes without any mappings are written as well, so they can be used
+     * to mark classes that don't inherit any mappings.
+     *
+     * @param mappings The mappings to write (method name and descriptor to
+     *        new method name), by owning class
+     * @param file The file to write the mappings to
+     * @throws IOException If writing the mappings fails
+     */
+    public static void write(Map<String, ? extends Map<String, String>> mappings, File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            write(mappings, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the specified mappings to an {@link OutputStream} in the binary
+     * format.
+     *
+     * @param mappings The mappings to write
+     * @param out The stream to write the mappings to
+     * @throws IOException If writing the mappings fails
+     */
+    public static void write(ImmutableTable<String, String, String> mappings, OutputStream out) throws IOException {
+        write(checkNotNull(mappings, "mappings").rowMap(), out);
+    }
+
+    /**
+     * Writes the specified mappings to an {@link OutputStream} in the binary
+     * format. Classes without any mappings are written as well, so they can
+     * be used to mark classes that don't inherit any mappings.
+     *
+     * @param mappings The mappings to write (method name and descriptor to
+     *        new method name), by owning class
+     * @param out The stream to write the mappings to
+     * @throws IOException If writing the mappings fails
+     */
+    public static void write(Map<String, ? extends Map<String, String>> mappings, OutputStream out) throws IOException {
+        checkNotNull(mappings, "mappings");
+
+        // Sort the owners by their encoded name, so they can be found using a binary search
+        SortedMap<byte[], String> owners = Maps.newTreeMap(COMPARATOR);
+        Set<String> methodNames = Sets.newTreeSet();
+        for (Map.Entry<String, ? extends Map<String, String>> entry : mappings.entrySet()) {
+            owners.put(entry.getKey().getBytes(UTF_8), entry.getKey());
+            for (String method : entry.getValue().keySet()) {
+                methodNames.add(TableMappings.getMethodName(method));
+            }
+        }
+
+        StringTable strings = new StringTable();
+        int[] ownerStrings = new int[owners.size()];
+        int[] ownerStarts = new int[owners.size() + 1];
+        List<int[]> entries = Lists.newArrayList();
+
+        int i = 0;
+        for (String owner : owners.values()) {
+            ownerStrings[i] = strings.add(owner);
+            ownerStarts[i++] = entries.size();
+            for (Map.Entry<String, String> entry : mappings.get(owner).entrySet()) {
+                entries.add(new int[] {strings.add(entry.getKey()), strings.add(entry.getValue())});
+            }
+        }
+        ownerStarts[i] = entries.size();
+
+        int[] methodNameStrings = new int[methodNames.size()];
+        i = 0;
+        for (String name : methodNames) {
+            methodNameStrings[i++] = strings.add(name);
+        }
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+
+        data.writeInt(strings.size());
+        int offset = 0;
+        for (byte[] string : strings.values) {
+            data.writeInt(offset);
+            offset += string.length;
+        }
+        data.writeInt(offset);
+
+        data.writeInt(ownerStrings.length);
+        for (i = 0; i < ownerStrings.length; i++) {
+            data.writeInt(ownerStrings[i]);
+            data.writeInt(ownerStarts[i]);
+        }
+        data.writeInt(0);
+        data.writeInt(ownerStarts[ownerStrings.length]);
+
+        for (int[] entry : entries) {
+            data.writeInt(entry[0]);
+            data.writeInt(entry[1]);
+        }
+
+        data.writeInt(methodNameStrings.length);
+        for (int string : methodNameStrings) {
+            data.writeInt(string);
+        }
+
+        for (byte[] string : strings.values) {
+            data.write(string);
+        }
+
+        data.flush();
+    }
+
+    private static final class StringTable {
+
+        private final Map<String, Integer> indexes = Maps.newHashMap();
+        private final List<byte[]> values = Lists.newArrayList();
+
+        int add(String value) {
+            Integer index = this.indexes.get(value);
+            if (index == null) {
+                index = this.values.size();
+                this.indexes.put(value, index);
+                this.values.add(value.getBytes(UTF_8));
+            }
+
+            return index;
+        }
+
+        int size() {
+            return this.values.size();
+        }
+
+    }
+
+    // A view of the owners, decoded only while iterating over them
+    private final class OwnerSet extends AbstractSet<String> {
+
+        @Override
+        public Iterator<String> iterator() {
+            return new UnmodifiableIterator<String>() {
+
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return this.index < ownerCount;
+                }
+
+                @Override
+                public String next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    return getString(buffer.getInt(owners + this.index++ * 8));
+                }
+
+            };
+        }
+
+        @Override
+        public int size() {
+            return ownerCount;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String && BinaryMappings.this.contains((String) o);
+        }
+
+    }
+
+}
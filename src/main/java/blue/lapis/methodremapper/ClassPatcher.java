@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import static org.objectweb.asm.Opcodes.ACC_SYNTHETIC;
+import static org.objectweb.asm.Opcodes.V1_5;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Remaps a class by patching the raw class bytes instead of rewriting it
+ * with a {@link org.objectweb.asm.ClassWriter}. Renaming methods never
+ * changes descriptors, so the code and the stack map frames of the class stay
+ * the same and only a few indexes into the constant pool need to be changed:
+ *
+ * <ul>
+ *     <li>Method references to remapped methods are changed to a new
+ *     {@code NameAndType} entry with the new name.</li>
+ *     <li>The name of remapped method declarations is changed to a new
+ *     {@code Utf8} entry and the methods are marked as synthetic.</li>
+ * </ul>
+ *
+ * <p>The new entries are appended to the constant pool, the existing entries
+ * are not changed since they may be shared with other references. The
+ * result is equivalent to {@link RemapClassVisitor}. If that isn't possible,
+ * the class needs to be rewritten using the visitor instead:</p>
+ *
+ * <ul>
+ *     <li>A method handle refers to a remapped method reference, which
+ *     isn't remapped by the visitor.</li>
+ *     <li>The class version is older than Java 5, which marks synthetic
+ *     methods using an attribute instead of the access flag.</li>
+ *     <li>The constant pool would exceed the maximum size.</li>
+ * </ul>
+ */
+final class ClassPatcher {
+
+    // Constant pool tags
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+
+    private static final int MAX_CONSTANT_POOL_SIZE = 0xFFFF;
+
+    private final Remapper remapper;
+    private final ClassReader reader;
+    private final char[] buf;
+
+    // The new constant pool entries, by their value
+    private final ByteArrayDataOutput entries = ByteStreams.newDataOutput();
+    private final Map<String, Integer> names = Maps.newHashMap();
+    private final Map<Integer, Integer> nameAndTypes = Maps.newHashMap();
+    private int count;
+
+    private int invokes;
+    private int methods;
+
+    ClassPatcher(Remapper remapper, ClassReader reader) {
+        this.remapper = remapper;
+        this.reader = reader;
+        this.buf = new char[reader.getMaxStringLength()];
+        this.count = reader.getItemCount();
+    }
+
+    int getInvokes() {
+        return this.invokes;
+    }
+
+    int getMethods() {
+        return this.methods;
+    }
+
+    /**
+     * Patches the class using the specified mappings for the declared
+     * methods.
+     *
+     * @param mappings The mappings of the class, or {@code null}
+     * @return The patched class, the unchanged class if nothing needs to be
+     *         remapped, or {@code null} if the class needs to be rewritten
+     *         using the visitor
+     */
+    byte[] patch(MethodMap mappings) throws IOException {
+        ClassReader reader = this.reader;
+        byte[] b = reader.b;
+        int items = reader.getItemCount();
+
+        // The positions to write the new constant pool indexes to
+        int[] patches = new int[16];
+        int patchCount = 0;
+
+        // Find the method references that need to be remapped
+        boolean[] patched = null;
+        int handles = 0;
+        for (int i = 1; i < items; i++) {
+            int item = reader.getItem(i);
+            if (item == 0) {
+                continue; // Second slot of long and double constants
+            }
+
+            int tag = b[item - 1];
+            if (tag == CONSTANT_METHOD_HANDLE) {
+                handles++;
+            } else if (tag == CONSTANT_METHODREF || tag == CONSTANT_INTERFACE_METHODREF) {
+                int nameAndType = reader.getItem(reader.readUnsignedShort(item + 2));
+                String mapping = this.remapper.getMapping(reader.readClass(item, this.buf),
+                        reader.readUTF8(nameAndType, this.buf), reader.readUTF8(nameAndType + 2, this.buf));
+                if (mapping != null) {
+                    if (patched == null) {
+                        patched = new boolean[items];
+                    }
+                    patched[i] = true;
+
+                    patches = ensureCapacity(patches, patchCount + 2);
+                    patches[patchCount++] = item + 2;
+                    patches[patchCount++] = addNameAndType(mapping, reader.readUnsignedShort(nameAndType + 2));
+                    this.invokes++;
+                }
+            }
+        }
+
+        // Method handles to remapped methods aren't remapped by the visitor
+        if (handles > 0 && patched != null) {
+            for (int i = 1; i < items; i++) {
+                int item = reader.getItem(i);
+                if (item != 0 && b[item - 1] == CONSTANT_METHOD_HANDLE && patched[reader.readUnsignedShort(item + 1)]) {
+                    return null;
+                }
+            }
+        }
+
+        // Find the method declarations that need to be remapped
+        int accessPatches = 0;
+        int[] access = new int[0];
+        if (mappings != null) {
+            int pos = reader.header + 6;
+            pos += 2 + reader.readUnsignedShort(pos) * 2; // Interfaces
+
+            int count = reader.readUnsignedShort(pos);
+            pos += 2;
+            for (int i = 0; i < count; i++) {
+                pos = Remapper.skipMember(reader, pos); // Fields
+            }
+
+            count = reader.readUnsignedShort(pos);
+            pos += 2;
+            for (int i = 0; i < count; i++) {
+                String mapping = mappings.get(reader.readUTF8(pos + 2, this.buf), reader.readUTF8(pos + 4, this.buf));
+                if (mapping != null) {
+                    if (reader.readUnsignedShort(Remapper.getClassStart(reader) + 6) < V1_5) {
+                        return null;
+                    }
+
+                    patches = ensureCapacity(patches, patchCount + 2);
+                    patches[patchCount++] = pos + 2;
+                    patches[patchCount++] = addName(mapping);
+
+                    access = ensureCapacity(access, accessPatches + 1);
+                    access[accessPatches++] = pos;
+                    this.methods++;
+                }
+
+                pos = Remapper.skipMember(reader, pos);
+            }
+        }
+
+        if (patchCount == 0) {
+            return Remapper.getClassBytes(reader);
+        }
+        if (this.count > MAX_CONSTANT_POOL_SIZE) {
+            return null;
+        }
+
+        // The class may be only a part of the array of the class reader
+        int start = Remapper.getClassStart(reader);
+        int length = Remapper.getClassEnd(reader) - start;
+
+        // Insert the new entries at the end of the constant pool
+        byte[] entries = this.entries.toByteArray();
+        int end = reader.header - start;
+        byte[] result = new byte[length + entries.length];
+        System.arraycopy(b, start, result, 0, end);
+        System.arraycopy(entries, 0, result, end, entries.length);
+        System.arraycopy(b, start + end, result, end + entries.length, length - end);
+        writeShort(result, 8, this.count);
+
+        for (int i = 0; i < patchCount; i += 2) {
+            writeShort(result, shift(patches[i] - start, end, entries.length), patches[i + 1]);
+        }
+
+        for (int i = 0; i < accessPatches; i++) {
+            int pos = shift(access[i] - start, end, entries.length);
+            writeShort(result, pos, readShort(result, pos) | ACC_SYNTHETIC);
+        }
+
+        return result;
+    }
+
+    private int addName(String name) {
+        Integer index = this.names.get(name);
+        if (index == null) {
+            index = this.count++;
+            this.entries.writeByte(CONSTANT_UTF8);
+            this.entries.writeUTF(name);
+            this.names.put(name, index);
+        }
+
+        return index;
+    }
+
+    private int addNameAndType(String name, int desc) {
+        int nameIndex = addName(name);
+        Integer key = (nameIndex << 16) | desc;
+        Integer index = this.nameAndTypes.get(key);
+        if (index == null) {
+            index = this.count++;
+            this.entries.writeByte(CONSTANT_NAME_AND_TYPE);
+            this.entries.writeShort(nameIndex);
+            this.entries.writeShort(desc);
+            this.nameAndTypes.put(key, index);
+        }
+
+        return index;
+    }
+
+    private static int shift(int pos, int end, int length) {
+        return pos < end ? pos : pos + length;
+    }
+
+    private static int[] ensureCapacity(int[] array, int size) {
+        if (array.length < size) {
+            int[] result = new int[Math.max(size, array.length * 2)];
+            System.arraycopy(array, 0, result, 0, array.length);
+            return result;
+        }
+
+        return array;
+    }
+
+    private static int readShort(byte[] b, int pos) {
+        return ((b[pos] & 0xFF) << 8) | (b[pos + 1] & 0xFF);
+    }
+
+    private static void writeShort(byte[] b, int pos, int value) {
+        b[pos] = (byte) (value >>> 8);
+        b[pos + 1] = (byte) value;
+    }
+
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import blue.lapis.methodremapper.metrics.RemapListener.Phase;
+import blue.lapis.methodremapper.provider.ClassHeader;
+import blue.lapis.methodremapper.zip.RawZipEntry;
+import blue.lapis.methodremapper.zip.RawZipFile;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Resolves the mappings of many classes at once, before they are remapped.
+ *
+ * <p>The {@link Remapper} resolves the class hierarchy lazily, one class at
+ * a time: Each class waits for the headers of its super classes to be
+ * loaded, recursively. This resolves the complete hierarchy of the specified
+ * classes up front instead:</p>
+ *
+ * <ol>
+ *     <li>The headers of all classes in the hierarchy are loaded from the
+ *     provider of the remapper in parallel, level by level, and stored in a
+ *     graph indexed by integers.</li>
+ *     <li>The mappings are pushed down from the classes with defined
+ *     mappings to their subclasses in topological order. All classes whose
+ *     super classes and interfaces are resolved are resolved in parallel in
+ *     the same wave.</li>
+ * </ol>
+ *
+ * <p>The resolved mappings are stored in the remapper, so remapping the
+ * classes afterwards doesn't need to load any other classes. Classes that
+ * are (indirectly) inheriting from themselves are left to the remapper.</p>
+ */
+public final class HierarchyResolver {
+
+    // Smaller waves are processed on the current thread
+    private static final int MIN_PARALLEL = 64;
+
+    private final Remapper remapper;
+    private final ExecutorService executor;
+    private final int threads;
+
+    /**
+     * Creates a new {@link HierarchyResolver} that resolves the classes on
+     * the current thread.
+     *
+     * @param remapper The remapper to resolve the mappings for
+     */
+    public HierarchyResolver(Remapper remapper) {
+        this(remapper, null, 1);
+    }
+
+    /**
+     * Creates a new {@link HierarchyResolver} that resolves the classes in
+     * parallel on the specified {@link ExecutorService}.
+     *
+     * @param remapper The remapper to resolve the mappings for
+     * @param executor The executor to load and resolve the classes on, or
+     *        {@code null} to resolve them on the current thread
+     * @param threads The number of threads used by the executor
+     */
+    public HierarchyResolver(Remapper remapper, ExecutorService executor, int threads) {
+        checkArgument(threads > 0, "threads must be positive");
+        this.remapper = checkNotNull(remapper, "remapper");
+        this.executor = executor;
+        this.threads = threads;
+    }
+
+    /**
+     * Resolves the mappings of all classes in the specified JAR files.
+     *
+     * @param zips The JAR files
+     * @return The number of resolved classes, including their super classes
+     * @throws IOException If loading one of the classes fails
+     */
+    public int resolve(RawZipFile... zips) throws IOException {
+        List<String> names = Lists.newArrayList();
+        for (RawZipFile zip : zips) {
+            for (RawZipEntry entry : zip.getEntries()) {
+                if (JarRemapper.isClass(entry)) {
+                    names.add(JarRemapper.getClassName(entry));
+                }
+            }
+        }
+
+        return resolve(names);
+    }
+
+    /**
+     * Resolves the mappings of the specified classes.
+     *
+     * @param names The names of the classes in internal format
+     * @return The number of resolved classes, including their super classes
+     * @throws IOException If loading one of the classes fails
+     */
+    public int resolve(Collection<String> names) throws IOException {
+        Graph graph = new Graph();
+        graph.load(names); // Recorded as LOAD by the threads loading the headers
+
+        long start = this.remapper.startTimer();
+        int result = graph.resolve();
+        this.remapper.stopTimer(Phase.RESOLVE, start);
+        return result;
+    }
+
+    // Runs the task for all elements in the range in parallel
+    private void forEach(int size, final RangeTask task) throws IOException {
+        if (this.executor == null || size < MIN_PARALLEL) {
+            task.run(0, size);
+            return;
+        }
+
+        int chunks = Math.min(this.threads, size / (MIN_PARALLEL / 2));
+        List<Future<Void>> futures = Lists.newArrayListWithCapacity(chunks);
+        try {
+            for (int i = 0; i < chunks; i++) {
+                final int from = (int) ((long) size * i / chunks);
+                final int to = (int) ((long) size * (i + 1) / chunks);
+                futures.add(this.executor.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws IOException {
+                        task.run(from, to);
+                        return null;
+                    }
+
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while resolving class hierarchy");
+                } catch (ExecutionException e) {
+                    Throwables.propagateIfPossible(e.getCause(), IOException.class);
+                    throw Throwables.propagate(e.getCause());
+                }
+            }
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private interface RangeTask {
+
+        void run(int from, int to) throws IOException;
+
+    }
+
+    private final class Graph {
+
+        private final Map<String, Integer> ids = Maps.newHashMap();
+        private String[] names = new String[64];
+        // The super class and interfaces of each class, or null for resolved classes
+        private int[][] parents = new int[64][];
+        private MethodMap[] mappings = new MethodMap[64];
+        private boolean[] resolved = new boolean[64];
+        private int size;
+
+        private int getId(String name, List<String> added) {
+            Integer id = this.ids.get(name);
+            if (id == null) {
+                id = this.size++;
+                if (id == this.names.length) {
+                    int capacity = id * 2;
+                    this.names = Arrays.copyOf(this.names, capacity);
+                    this.parents = Arrays.copyOf(this.parents, capacity);
+                    this.mappings = Arrays.copyOf(this.mappings, capacity);
+                    this.resolved = Arrays.copyOf(this.resolved, capacity);
+                }
+
+                this.names[id] = name;
+                this.ids.put(name, id);
+                added.add(name);
+            }
+
+            return id;
+        }
+
+        // Loads the headers of all classes in the hierarchy, level by level
+        void load(Collection<String> classes) throws IOException {
+            List<String> level = Lists.newArrayList();
+            for (String name : classes) {
+                getId(name, level);
+            }
+
+            while (!level.isEmpty()) {
+                final int first = this.size - level.size();
+                final ClassHeader[] headers = new ClassHeader[level.size()];
+                final boolean[] known = new boolean[level.size()];
+                forEach(headers.length, new RangeTask() {
+
+                    @Override
+                    public void run(int from, int to) throws IOException {
+                        for (int i = from; i < to; i++) {
+                            int id = first + i;
+                            MethodMap mappings = remapper.getKnownMappings(names[id]);
+                            if (mappings != null) {
+                                Graph.this.mappings[id] = mappings != MethodMap.EMPTY ? mappings : null;
+                                known[i] = true;
+                            } else {
+                                headers[i] = remapper.loadHeader(names[id]);
+                            }
+                        }
+                    }
+
+                });
+
+                List<String> next = Lists.newArrayList();
+                for (int i = 0; i < headers.length; i++) {
+                    int id = first + i;
+                    ClassHeader header = headers[i];
+                    if (known[i] || header == null) {
+                        this.resolved[id] = true; // Classes that weren't found don't have any mappings
+                        continue;
+                    }
+
+                    List<String> interfaces = header.getInterfaces();
+                    int[] parents = new int[(header.getSuperName() != null ? 1 : 0) + interfaces.size()];
+                    if (parents.length == 0) {
+                        this.resolved[id] = true; // java/lang/Object doesn't inherit anything
+                        continue;
+                    }
+
+                    int count = 0;
+                    if (header.getSuperName() != null) {
+                        parents[count++] = getId(header.getSuperName(), next);
+                    }
+                    for (String iface : interfaces) {
+                        parents[count++] = getId(iface, next);
+                    }
+
+                    this.parents[id] = parents;
+                }
+
+                level = next;
+            }
+        }
+
+        // Pushes the mappings down to the subclasses, in waves of classes whose parents are all resolved
+        int resolve() throws IOException {
+            int size = this.size;
+
+            // Count the unresolved parents and index the children of each class
+            int[] pending = new int[size];
+            int[] childCount = new int[size + 1];
+            for (int id = 0; id < size; id++) {
+                if (this.parents[id] != null) {
+                    pending[id] = this.parents[id].length;
+                    for (int parent : this.parents[id]) {
+                        childCount[parent]++;
+                    }
+                }
+            }
+
+            int[] childStart = new int[size + 1];
+            for (int id = 0; id < size; id++) {
+                childStart[id + 1] = childStart[id] + childCount[id];
+            }
+
+            int[] children = new int[childStart[size]];
+            int[] fill = Arrays.copyOf(childStart, size);
+            for (int id = 0; id < size; id++) {
+                if (this.parents[id] != null) {
+                    for (int parent : this.parents[id]) {
+                        children[fill[parent]++] = id;
+                    }
+                }
+            }
+
+            // Start with the classes that were resolved without their hierarchy
+            int[] wave = new int[size];
+            int waveSize = 0;
+            for (int id = 0; id < size; id++) {
+                if (this.resolved[id]) {
+                    wave[waveSize++] = id;
+                }
+            }
+
+            int resolvedCount = 0;
+            int[] next = new int[size];
+            while (waveSize > 0) {
+                resolvedCount += waveSize;
+
+                int nextSize = 0;
+                for (int i = 0; i < waveSize; i++) {
+                    int id = wave[i];
+                    remapper.putResolved(this.names[id], this.mappings[id]);
+                    for (int c = childStart[id], end = childStart[id + 1]; c < end; c++) {
+                        int child = children[c];
+                        if (--pending[child] == 0) {
+                            next[nextSize++] = child;
+                        }
+                    }
+                }
+
+                final int[] current = next;
+                forEach(nextSize, new RangeTask() {
+
+                    @Override
+                    public void run(int from, int to) {
+                        for (int i = from; i < to; i++) {
+                            int id = current[i];
+                            Graph.this.mappings[id] = inherit(Graph.this.parents[id]);
+                        }
+                    }
+
+                });
+
+                next = wave;
+                wave = current;
+                waveSize = nextSize;
+            }
+
+            return resolvedCount;
+        }
+
+        // Merges the mappings of the super class and the interfaces, like the remapper
+        private MethodMap inherit(int[] parents) {
+            MethodMap[] mappings = new MethodMap[parents.length];
+            for (int i = 0; i < parents.length; i++) {
+                mappings[i] = this.mappings[parents[i]];
+            }
+
+            return MethodMap.inherit(mappings);
+        }
+
+    }
+
+}
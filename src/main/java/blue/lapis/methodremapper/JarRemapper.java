@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import static blue.lapis.methodremapper.Remapper.logger;
+import static blue.lapis.methodremapper.provider.ZipClassProvider.CLASS_EXTENSION;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import blue.lapis.methodremapper.RemapIndex.ClassEntry;
+import blue.lapis.methodremapper.provider.ClassProvider;
+import blue.lapis.methodremapper.provider.ClasspathProvider;
+import blue.lapis.methodremapper.provider.RawZipClassProvider;
+import blue.lapis.methodremapper.zip.RawZipEntry;
+import blue.lapis.methodremapper.zip.RawZipFile;
+import blue.lapis.methodremapper.zip.ZipWriter;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Remaps all classes in a ZIP or JAR file using a {@link Remapper} and writes
+ * them to a {@link ZipWriter}.
+ *
+ * <p>Only classes that were changed by the remapper are compressed again,
+ * all other entries are copied without decompressing them. If an
+ * {@link ExecutorService} is provided, the classes are read, remapped and
+ * compressed in parallel. The entries are still written in the same order as
+ * in the input file, so the output is the same as with sequential
+ * remapping.</p>
+ *
+ * <p>Using {@link #remapIncremental}, only the classes that have changed
+ * since the previous run are remapped again, using the {@link RemapIndex}
+ * of the previous run.</p>
+ */
+public class JarRemapper {
+
+    private static final int ENTRIES_PER_THREAD = 16;
+    private static final String[] NO_CLASSES = new String[0];
+
+    private final Remapper remapper;
+    private final ExecutorService executor;
+    private final int window;
+
+    /**
+     * Creates a new {@link JarRemapper} that will remap the classes
+     * sequentially on the current thread.
+     *
+     * @param remapper The remapper to use
+     */
+    public JarRemapper(Remapper remapper) {
+        this(remapper, null, 1);
+    }
+
+    /**
+     * Creates a new {@link JarRemapper} that will remap the classes in
+     * parallel on the specified {@link ExecutorService}.
+     *
+     * @param remapper The remapper to use
+     * @param executor The executor to remap the classes on, or {@code null} to
+     *        remap them on the current thread
+     * @param threads The number of threads used by the executor, used to limit
+     *        the number of classes that are kept in memory at the same time
+     */
+    public JarRemapper(Remapper remapper, ExecutorService executor, int threads) {
+        checkArgument(threads > 0, "threads must be positive");
+        this.remapper = checkNotNull(remapper, "remapper");
+        this.executor = executor;
+        this.window = threads * ENTRIES_PER_THREAD;
+    }
+
+    /**
+     * Gets the {@link Remapper} of this {@link JarRemapper}.
+     *
+     * @return The remapper
+     */
+    public Remapper getRemapper() {
+        return this.remapper;
+    }
+
+    /**
+     * Remaps all classes in the specified {@link RawZipFile} and writes all
+     * entries to the specified {@link ZipWriter}.
+     *
+     * @param zip The zip file to read the entries from
+     * @param out The writer to write the entries to
+     * @throws IOException If reading or remapping one of the classes fails
+     */
+    public void remap(RawZipFile zip, ZipWriter out) throws IOException {
+        run(zip, out, false, null);
+    }
+
+    /**
+     * Remaps the classes in the specified {@link RawZipFile} that have
+     * changed since the previous run and writes all entries to the specified
+     * {@link ZipWriter}. Classes that don't need to be remapped again are
+     * copied from the output of the previous run.
+     *
+     * @param zip The zip file to read the entries from
+     * @param out The writer to write the entries to
+     * @param key The key of the index, e.g. a hash of the mapping
+     *        configuration
+     * @param previous The index of the previous run, or {@code null} to remap
+     *        all classes
+     * @param previousOutput The output of the previous run, or {@code null} to
+     *        remap all classes
+     * @return The index for the next run
+     * @throws IOException If reading or remapping one of the classes fails
+     */
+    public RemapIndex remapIncremental(RawZipFile zip, ZipWriter out, String key, RemapIndex previous, RawZipFile previousOutput)
+            throws IOException {
+        checkNotNull(key, "key");
+
+        Map<String, RawZipEntry> unchanged = null;
+        if (previous != null && previousOutput != null && previous.getKey().equals(key)) {
+            unchanged = findUnchanged(zip, previous, previousOutput);
+            logger.debug("Reusing {} unchanged classes from {}", unchanged.size(), previousOutput.getFile());
+        }
+
+        Map<String, ClassEntry> classes = run(zip, out, true, unchanged != null ? new Source(previousOutput, unchanged) : null);
+        if (unchanged != null) {
+            for (RawZipEntry entry : zip.getEntries()) {
+                if (unchanged.containsKey(entry.getName())) {
+                    String name = getClassName(entry);
+                    classes.put(name, previous.get(name));
+                }
+            }
+        }
+
+        Map<String, Long> fingerprints = RemapIndex.computeFingerprints(this.remapper, classes);
+        for (Map.Entry<String, ClassEntry> entry : classes.entrySet()) {
+            entry.setValue(entry.getValue().withFingerprint(fingerprints.get(entry.getKey())));
+        }
+
+        return new RemapIndex(key, classes, RemapIndex.computeOwnerFingerprints(this.remapper, classes));
+    }
+
+    private Map<String, RawZipEntry> findUnchanged(RawZipFile zip, RemapIndex previous, RawZipFile previousOutput)
+            throws IOException {
+        // Collect the hierarchy of all classes, only changed classes need to be read again
+        Map<String, ClassEntry> classes = Maps.newHashMap();
+        Set<String> changed = Sets.newHashSet();
+        for (RawZipEntry entry : zip.getEntries()) {
+            if (isClass(entry)) {
+                String name = getClassName(entry);
+                ClassEntry old = previous.get(name);
+                if (old != null && old.crc == entry.getCrc() && old.size == entry.getSize()
+                        && previousOutput.getEntry(entry.getName()) != null) {
+                    classes.put(name, old);
+                } else {
+                    changed.add(name);
+                    classes.put(name, createEntry(entry, new ClassReader(getBytes(zip, entry)), false));
+                }
+            }
+        }
+
+        // Find all classes with different mappings than in the previous run
+        Set<String> affected = Sets.newHashSet();
+        Map<String, Long> fingerprints = RemapIndex.computeFingerprints(this.remapper, classes);
+        for (Map.Entry<String, Long> entry : fingerprints.entrySet()) {
+            ClassEntry old = previous.get(entry.getKey());
+            if (old == null || old.fingerprint != entry.getValue()) {
+                affected.add(entry.getKey());
+            }
+        }
+
+        for (Map.Entry<String, ClassEntry> entry : previous.getClasses().entrySet()) {
+            if (!classes.containsKey(entry.getKey())
+                    && entry.getValue().fingerprint != RemapIndex.fingerprint(this.remapper.getMappings(entry.getKey()))) {
+                affected.add(entry.getKey()); // Removed class
+            }
+        }
+
+        // Invoked classes outside of the JAR file, e.g. if a library was updated
+        for (Map.Entry<String, Long> entry : previous.getOwners().entrySet()) {
+            if (!classes.containsKey(entry.getKey())
+                    && entry.getValue() != RemapIndex.fingerprint(this.remapper.getMappings(entry.getKey()))) {
+                affected.add(entry.getKey());
+            }
+        }
+
+        Map<String, RawZipEntry> result = Maps.newHashMap();
+        for (RawZipEntry entry : zip.getEntries()) {
+            if (isClass(entry)) {
+                String name = getClassName(entry);
+                if (!changed.contains(name) && !affected.contains(name) && !invokesAny(previous.get(name), affected)) {
+                    result.put(entry.getName(), previousOutput.getEntry(entry.getName()));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean invokesAny(ClassEntry entry, Set<String> classes) {
+        for (String owner : entry.invokedOwners) {
+            if (classes.contains(owner)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private Map<String, ClassEntry> run(RawZipFile zip, ZipWriter out, boolean index, Source source) throws IOException {
+        Map<String, ClassEntry> classes = index ? Maps.<String, ClassEntry>newHashMap() : null;
+        Queue<Task> pending = new ArrayDeque<Task>(this.window);
+        try {
+            for (RawZipEntry entry : zip.getEntries()) {
+                if (pending.size() >= this.window) {
+                    pending.remove().write(zip, out, classes);
+                }
+
+                Task task;
+                if (source != null && source.entries.containsKey(entry.getName())) {
+                    task = new Task(entry, source.zip, source.entries.get(entry.getName()));
+                } else if (!isClass(entry)) {
+                    task = new Task(entry, zip, entry);
+                } else if (this.executor != null) {
+                    task = new Task(entry, this.executor.submit(new RemapCallable(zip, entry, index)));
+                } else {
+                    task = new Task(entry, Futures.immediateFuture(remap(zip, entry, index)));
+                }
+
+                pending.add(task);
+            }
+
+            while (!pending.isEmpty()) {
+                pending.remove().write(zip, out, classes);
+            }
+        } finally {
+            // Cancel remaining tasks if writing one of the entries has failed
+            for (Task task : pending) {
+                if (task.result != null) {
+                    task.result.cancel(true);
+                }
+            }
+        }
+
+        return classes;
+    }
+
+    private Result remap(RawZipFile zip, RawZipEntry entry, boolean index) throws IOException {
+        ClassReader reader = new ClassReader(getBytes(zip, entry));
+        byte[] bytes = this.remapper.remap(reader);
+
+        // Keep the original entry if the class doesn't need to be changed
+        ZipWriter.Data data = bytes != reader.b ? ZipWriter.compress(entry, bytes) : null;
+        return new Result(data, index ? createEntry(entry, reader, true) : null);
+    }
+
+    private byte[] getBytes(RawZipFile zip, RawZipEntry entry) throws IOException {
+        // Share the decompressed classes with the provider, they might be needed again to resolve the class hierarchy
+        ClassProvider provider = this.remapper.getProvider();
+        if (provider instanceof ClasspathProvider) {
+            provider = ((ClasspathProvider) provider).getSource(getClassName(entry));
+        }
+
+        if (provider instanceof RawZipClassProvider && ((RawZipClassProvider) provider).getZip() == zip) {
+            return ((RawZipClassProvider) provider).getBytes(entry);
+        }
+
+        return zip.getBytes(entry);
+    }
+
+    private ClassEntry createEntry(RawZipEntry entry, ClassReader reader, boolean owners) {
+        String[] invokedOwners = NO_CLASSES;
+        if (owners) {
+            invokedOwners = this.remapper.getInvokedOwners(reader).toArray(NO_CLASSES);
+        }
+
+        String[] interfaces = reader.getInterfaces();
+        return new ClassEntry(entry.getCrc(), entry.getSize(), reader.getSuperName(), interfaces != null ? interfaces : NO_CLASSES,
+                invokedOwners, 0);
+    }
+
+    static boolean isClass(RawZipEntry entry) {
+        return !entry.isDirectory() && entry.getName().endsWith(CLASS_EXTENSION);
+    }
+
+    static String getClassName(RawZipEntry entry) {
+        String name = entry.getName();
+        return name.substring(0, name.length() - CLASS_EXTENSION.length());
+    }
+
+    private static final class Source {
+
+        private final RawZipFile zip;
+        private final Map<String, RawZipEntry> entries;
+
+        Source(RawZipFile zip, Map<String, RawZipEntry> entries) {
+            this.zip = zip;
+            this.entries = entries;
+        }
+
+    }
+
+    private static final class Result {
+
+        private final ZipWriter.Data data;
+        private final ClassEntry entry;
+
+        Result(ZipWriter.Data data, ClassEntry entry) {
+            this.data = data;
+            this.entry = entry;
+        }
+
+    }
+
+    private final class RemapCallable implements Callable<Result> {
+
+        private final RawZipFile zip;
+        private final RawZipEntry entry;
+        private final boolean index;
+
+        RemapCallable(RawZipFile zip, RawZipEntry entry, boolean index) {
+            this.zip = zip;
+            this.entry = entry;
+            this.index = index;
+        }
+
+        @Override
+        public Result call() throws IOException {
+            return remap(this.zip, this.entry, this.index);
+        }
+
+    }
+
+    private static final class Task {
+
+        private final RawZipEntry entry;
+        private final Future<Result> result;
+
+        // The entry to copy if the task doesn't have a result
+        private final RawZipFile source;
+        private final RawZipEntry sourceEntry;
+
+        Task(RawZipEntry entry, Future<Result> result) {
+            this.entry = entry;
+            this.result = result;
+            this.source = null;
+            this.sourceEntry = null;
+        }
+
+        Task(RawZipEntry entry, RawZipFile source, RawZipEntry sourceEntry) {
+            this.entry = entry;
+            this.result = null;
+            this.source = source;
+            this.sourceEntry = sourceEntry;
+        }
+
+        void write(RawZipFile zip, ZipWriter out, Map<String, ClassEntry> classes) throws IOException {
+            if (this.result == null) {
+                out.copy(this.source, this.sourceEntry, this.entry);
+                return;
+            }
+
+            Result result;
+            try {
+                result = this.result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while remapping " + this.entry);
+            } catch (ExecutionException e) {
+                Throwables.propagateIfPossible(e.getCause(), IOException.class);
+                throw Throwables.propagate(e.getCause());
+            }
+
+            if (result.data != null) {
+                out.write(result.data);
+            } else {
+                out.copy(zip, this.entry);
+            }
+
+            if (classes != null) {
+                classes.put(getClassName(this.entry), result.entry);
+            }
+        }
+
+    }
+
+}
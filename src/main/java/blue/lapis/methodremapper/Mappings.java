@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Represents the method mappings used by a {@link Remapper}, grouped by the
+ * owning class of the methods.
+ */
+public interface Mappings {
+
+    /**
+     * Returns whether mappings are defined for the specified class. Classes
+     * with defined mappings don't inherit the mappings of their super
+     * classes.
+     *
+     * @param owner The full qualified class name in internal format, e.g.
+     *        java/lang/Object
+     * @return {@code true} if mappings are defined for the class
+     */
+    boolean contains(String owner);
+
+    /**
+     * Gets the mappings defined for the specified class.
+     *
+     * @param owner The full qualified class name in internal format, e.g.
+     *        java/lang/Object
+     * @return The mappings (method name and descriptor to new method name),
+     *         or {@code null} if no mappings are defined for the class
+     */
+    Map<String, String> get(String owner);
+
+    /**
+     * Gets the names of all classes with defined mappings.
+     *
+     * @return The names of all classes with defined mappings
+     */
+    Set<String> getOwners();
+
+    /**
+     * Returns whether mappings are defined for methods of any class whose
+     * name starts with the specified prefix. Classes that are defined without
+     * any mappings are ignored.
+     *
+     * @param prefix The prefix of the class names in internal format, e.g.
+     *        java/
+     * @return {@code true} if any class with the prefix has mappings
+     */
+    boolean hasMappingsWithPrefix(String prefix);
+
+    /**
+     * Gets the names (without descriptor) of all mapped methods.
+     *
+     * @return The names of all mapped methods
+     */
+    Set<String> getMethodNames();
+
+}
@@ -0,0 +1,614 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Loads {@link TextMappings} from multiple files or resources and merges them.
+ *
+ * <p>All files are read and scanned in parallel, large files are split into
+ * chunks that are scanned and sorted in parallel as well. The sorted mappings
+ * of all chunks are merged afterwards. A method may be mapped in multiple
+ * files, but only to the same name, otherwise loading fails with a list of
+ * the conflicting mappings.</p>
+ *
+ * <p>A line {@code include <path>} loads the mappings of another file, with
+ * the path relative to the including file. Each file is only loaded once,
+ * even if it is included multiple times.</p>
+ *
+ * <p>The loader can be used to load the mappings again later. Files that
+ * haven't been modified since they were loaded are not read again, and if
+ * none of the files were modified the previous mappings are returned.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public final class MappingsLoader {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+    };
+
+    // Smaller files are scanned completely on a single thread
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+    private static final int MAX_CONFLICTS = 20;
+
+    private static final String FILE_PROTOCOL = "file";
+
+    private final ImmutableList<URL> roots;
+    private final int threads;
+
+    // The sources of the last load, by their location
+    private Map<URL, Source> sources = Maps.newLinkedHashMap();
+    private TextMappings mappings;
+
+    private MappingsLoader(ImmutableList<URL> roots, int threads) {
+        this.roots = roots;
+        this.threads = threads;
+    }
+
+    /**
+     * Loads the mappings from all files, or returns the mappings of the last
+     * load if none of the files were modified since then.
+     *
+     * @return The loaded mappings
+     * @throws IOException If one of the files couldn't be read or if a method
+     *         is mapped to different names
+     */
+    public synchronized TextMappings load() throws IOException {
+        if (this.mappings == null || isModified()) {
+            Load load = new Load();
+            try {
+                this.mappings = load.run();
+                this.sources = load.sources;
+            } finally {
+                load.shutdown();
+            }
+        }
+
+        return this.mappings;
+    }
+
+    /**
+     * Returns whether one of the files was modified since the last load.
+     * Resources that aren't files are assumed to be unchanged.
+     *
+     * @return {@code true} if the mappings need to be loaded again
+     */
+    public synchronized boolean isModified() {
+        if (this.mappings == null) {
+            return true;
+        }
+
+        for (Source source : this.sources.values()) {
+            if (source.isModified()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets the locations of all files loaded by the last load, including the
+     * included files.
+     *
+     * @return The locations of the loaded files
+     */
+    public synchronized Set<URL> getSources() {
+        return ImmutableSet.copyOf(this.sources.keySet());
+    }
+
+    /**
+     * Hashes the content of all files loaded by the last load, so the hash
+     * changes if any of the files (including the included files) changes.
+     *
+     * @param function The hash function to use
+     * @return The hash of the loaded files
+     */
+    public synchronized HashCode hash(HashFunction function) {
+        checkState(this.mappings != null, "Mappings haven't been loaded yet");
+        Hasher hasher = function.newHasher();
+        for (Source source : this.sources.values()) {
+            hasher.putInt(source.data.length).putBytes(source.data);
+        }
+
+        return hasher.hash();
+    }
+
+    private static URL toURL(File file) throws IOException {
+        return file.getCanonicalFile().toURI().toURL();
+    }
+
+    private static File toFile(URL url) {
+        if (url.getProtocol().equals(FILE_PROTOCOL)) {
+            try {
+                return new File(url.toURI());
+            } catch (URISyntaxException ignored) {
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+
+        return null;
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading mappings");
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Creates a new {@link Builder} for a {@link MappingsLoader}.
+     *
+     * @return The new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A builder for {@link MappingsLoader}s.
+     */
+    public static final class Builder {
+
+        private final ImmutableList.Builder<URL> roots = ImmutableList.builder();
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a mapping file to load.
+         *
+         * @param file The file to add
+         * @return This builder
+         * @throws IOException If the path of the file couldn't be resolved
+         */
+        public Builder add(File file) throws IOException {
+            checkNotNull(file, "file");
+            this.roots.add(toURL(file));
+            return this;
+        }
+
+        /**
+         * Adds all specified mapping files to load.
+         *
+         * @param files The files to add
+         * @return This builder
+         * @throws IOException If the path of one of the files couldn't be
+         *         resolved
+         */
+        public Builder addAll(Iterable<File> files) throws IOException {
+            for (File file : files) {
+                add(file);
+            }
+            return this;
+        }
+
+        /**
+         * Adds a mapping resource to load.
+         *
+         * @param resource The resource to add
+         * @return This builder
+         */
+        public Builder add(URL resource) {
+            checkNotNull(resource, "resource");
+            this.roots.add(resource);
+            return this;
+        }
+
+        /**
+         * Sets the number of threads used to load the mappings. By default,
+         * the number of available processors is used.
+         *
+         * @param threads The number of threads, 1 to load the mappings
+         *        sequentially
+         * @return This builder
+         */
+        public Builder threads(int threads) {
+            checkArgument(threads > 0, "threads must be positive");
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Builds the {@link MappingsLoader}. The mappings are not loaded
+         * until {@link MappingsLoader#load()} is called.
+         *
+         * @return The mappings loader
+         */
+        public MappingsLoader build() {
+            return new MappingsLoader(this.roots.build(), this.threads);
+        }
+
+    }
+
+    // The state of a single load, only modified by the thread calling load()
+    private final class Load {
+
+        private final Map<URL, Source> sources = Maps.newLinkedHashMap();
+        private final BlockingQueue<Future<Object>> completed = new LinkedBlockingQueue<Future<Object>>();
+        private ExecutorService executor;
+        private int pending;
+
+        TextMappings run() throws IOException {
+            Queue<URL> queue = new ArrayDeque<URL>(roots);
+            while (true) {
+                List<Callable<Object>> tasks = Lists.newArrayList();
+                while (!queue.isEmpty()) {
+                    URL url = queue.remove();
+                    if (this.sources.containsKey(url)) {
+                        continue;
+                    }
+
+                    Source source = MappingsLoader.this.sources.get(url);
+                    if (source != null && !source.isModified()) {
+                        this.sources.put(url, source);
+                        queue.addAll(source.includes);
+                    } else {
+                        this.sources.put(url, null);
+                        tasks.add(new ReadTask(url));
+                    }
+                }
+
+                submit(tasks);
+                if (this.pending == 0) {
+                    break;
+                }
+
+                Object result = take();
+                if (result instanceof Source) {
+                    // Split the file into chunks at line boundaries
+                    Source source = (Source) result;
+                    this.sources.put(source.url, source);
+
+                    byte[] data = source.data;
+                    int size = Math.max(MIN_CHUNK_SIZE, data.length / threads + 1);
+                    int start = 0;
+                    while (start < data.length || source.chunks.isEmpty()) {
+                        int end = Math.min(start + size, data.length);
+                        while (end < data.length && data[end - 1] != '\n') {
+                            end++;
+                        }
+
+                        tasks.add(new ScanTask(source, source.chunks.size(), start, end));
+                        source.chunks.add(null);
+                        start = end;
+                    }
+
+                    source.pending = tasks.size();
+                    submit(tasks);
+                } else {
+                    Chunk chunk = (Chunk) result;
+                    Source source = chunk.source;
+                    source.chunks.set(chunk.index, chunk);
+                    if (--source.pending == 0) {
+                        for (Chunk c : source.chunks) {
+                            source.includes.addAll(c.includes);
+                        }
+                        queue.addAll(source.includes);
+                    }
+                }
+            }
+
+            return merge();
+        }
+
+        private TextMappings merge() throws IOException {
+            Source[] sources = this.sources.values().toArray(new Source[this.sources.size()]);
+
+            // Copy all files into a single array, each terminated by a line break
+            int size = 0;
+            int[] starts = new int[sources.length];
+            for (int i = 0; i < sources.length; i++) {
+                starts[i] = size;
+                size += sources[i].data.length + 1;
+            }
+
+            byte[] data = new byte[size];
+            List<int[]> lines = Lists.newArrayList();
+            for (int i = 0; i < sources.length; i++) {
+                System.arraycopy(sources[i].data, 0, data, starts[i], sources[i].data.length);
+                data[starts[i] + sources[i].data.length] = '\n';
+
+                for (Chunk chunk : sources[i].chunks) {
+                    int[] shifted = new int[chunk.lines.length];
+                    for (int j = 0; j < shifted.length; j++) {
+                        shifted[j] = chunk.lines[j] + starts[i];
+                    }
+                    lines.add(shifted);
+                }
+            }
+
+            int[] result = mergeAll(data, lines);
+
+            List<int[]> conflicts = Lists.newArrayList();
+            result = TextMappings.removeDuplicates(data, result, conflicts);
+            if (!conflicts.isEmpty()) {
+                StringBuilder message = new StringBuilder("Conflicting mappings:");
+                for (int[] conflict : conflicts.subList(0, Math.min(conflicts.size(), MAX_CONFLICTS))) {
+                    message.append("\n  ").append(describe(data, sources, starts, conflict[0]))
+                            .append("\n  ").append(describe(data, sources, starts, conflict[1]));
+                }
+                if (conflicts.size() > MAX_CONFLICTS) {
+                    message.append("\n  (").append(conflicts.size() - MAX_CONFLICTS).append(" more)");
+                }
+                throw new IOException(message.toString());
+            }
+
+            return new TextMappings(data, result);
+        }
+
+        // Merges the sorted arrays pairwise, in parallel if possible
+        private int[] mergeAll(final byte[] data, List<int[]> lines) throws IOException {
+            if (lines.isEmpty()) {
+                return new int[0];
+            }
+
+            while (lines.size() > 1) {
+                List<Callable<Object>> tasks = Lists.newArrayList();
+                for (int i = 0; i + 1 < lines.size(); i += 2) {
+                    final int[] a = lines.get(i);
+                    final int[] b = lines.get(i + 1);
+                    tasks.add(new Callable<Object>() {
+
+                        @Override
+                        public Object call() {
+                            return TextMappings.merge(data, a, b);
+                        }
+
+                    });
+                }
+
+                List<int[]> merged = Lists.newArrayListWithCapacity(tasks.size() + 1);
+                if (lines.size() % 2 != 0) {
+                    merged.add(lines.get(lines.size() - 1));
+                }
+
+                submit(tasks);
+                while (this.pending > 0) {
+                    merged.add((int[]) take());
+                }
+
+                lines = merged;
+            }
+
+            return lines.get(0);
+        }
+
+        private String describe(byte[] data, Source[] sources, int[] starts, int line) {
+            int index = Arrays.binarySearch(starts, line);
+            if (index < 0) {
+                index = -index - 2;
+            }
+
+            int number = 1;
+            for (int pos = starts[index]; pos < line; pos++) {
+                if (data[pos] == '\n') {
+                    number++;
+                }
+            }
+
+            return TextMappings.decodeLine(data, line) + " (" + sources[index].url + ':' + number + ')';
+        }
+
+        private void submit(List<Callable<Object>> tasks) {
+            if (this.executor == null && threads > 1 && this.pending + tasks.size() > 1) {
+                this.executor = Executors.newFixedThreadPool(threads);
+            }
+
+            for (Callable<Object> task : tasks) {
+                this.pending++;
+                (this.executor != null ? this.executor : DIRECT_EXECUTOR).execute(new Task(task));
+            }
+
+            tasks.clear();
+        }
+
+        private Object take() throws IOException {
+            Future<Object> future;
+            try {
+                future = this.completed.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading mappings");
+            }
+
+            this.pending--;
+            return getResult(future);
+        }
+
+        void shutdown() {
+            if (this.executor != null) {
+                this.executor.shutdownNow();
+            }
+        }
+
+        private final class Task extends FutureTask<Object> {
+
+            Task(Callable<Object> callable) {
+                super(callable);
+            }
+
+            @Override
+            protected void done() {
+                completed.add(this);
+            }
+
+        }
+
+    }
+
+    private static final class ReadTask implements Callable<Object> {
+
+        private final URL url;
+
+        ReadTask(URL url) {
+            this.url = url;
+        }
+
+        @Override
+        public Object call() throws IOException {
+            File file = toFile(this.url);
+            if (file == null) {
+                return new Source(this.url, null, 0, 0, Resources.toByteArray(this.url));
+            }
+
+            // Remember the state before reading, so changes while reading are detected later
+            long length = file.length();
+            long lastModified = file.lastModified();
+            return new Source(this.url, file, length, lastModified, Files.toByteArray(file));
+        }
+
+    }
+
+    private static final class ScanTask implements Callable<Object> {
+
+        private final Source source;
+        private final int index;
+        private final int start;
+        private final int end;
+
+        ScanTask(Source source, int index, int start, int end) {
+            this.source = source;
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Object call() throws IOException {
+            List<String> paths = Lists.newArrayList();
+            int[] lines = TextMappings.scan(this.source.data, this.start, this.end, paths);
+            TextMappings.sort(lines, this.source.data);
+
+            List<URL> includes = Lists.newArrayListWithCapacity(paths.size());
+            for (String path : paths) {
+                includes.add(resolve(path));
+            }
+
+            return new Chunk(this.source, this.index, lines, includes);
+        }
+
+        private URL resolve(String path) throws IOException {
+            try {
+                URL url = new URL(this.source.url, path);
+                File file = toFile(url);
+                return file != null ? toURL(file) : url;
+            } catch (MalformedURLException e) {
+                throw new IOException("Invalid include in " + this.source.url + ": " + path, e);
+            }
+        }
+
+    }
+
+    private static final class Source {
+
+        private final URL url;
+        private final File file;
+        private final long length;
+        private final long lastModified;
+        private final byte[] data;
+
+        private final List<Chunk> chunks = Lists.newArrayList();
+        private final List<URL> includes = Lists.newArrayList();
+        private int pending;
+
+        Source(URL url, File file, long length, long lastModified, byte[] data) {
+            this.url = url;
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.data = data;
+        }
+
+        boolean isModified() {
+            return this.file != null && (this.file.length() != this.length || this.file.lastModified() != this.lastModified);
+        }
+
+    }
+
+    private static final class Chunk {
+
+        private final Source source;
+        private final int index;
+        private final int[] lines;
+        private final List<URL> includes;
+
+        Chunk(Source source, int index, int[] lines, List<URL> includes) {
+            this.source = source;
+            this.index = index;
+            this.lines = lines;
+            this.includes = includes;
+        }
+
+    }
+
+}
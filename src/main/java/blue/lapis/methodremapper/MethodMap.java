@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Maps;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map from method name and descriptor to the new method name.
+ * In addition to the usual lookup using the concatenated name and descriptor,
+ * it can look up methods using separate name and descriptor strings without
+ * allocating a new string for the key.
+ *
+ * <p>Most classes inherit the same mappings as many other classes, so the
+ * mappings created by {@link #inherit(MethodMap[])} are shared: If only one
+ * of the super classes has mappings, its instance is reused, otherwise equal
+ * mappings are interned to a single instance.</p>
+ */
+final class MethodMap extends AbstractMap<String, String> {
+
+    static final MethodMap EMPTY = new MethodMap(new String[0], new String[0], 0);
+
+    private static final int POWERS = 256;
+    private static final int[] POWERS_OF_31 = new int[POWERS];
+
+    static {
+        int power = 1;
+        for (int i = 0; i < POWERS; i++) {
+            POWERS_OF_31[i] = power;
+            power *= 31;
+        }
+    }
+
+    // Weak, so the shared instances can be collected together with the remappers using them
+    private static final Interner<MethodMap> INTERNER = Interners.newWeakInterner();
+
+    private final String[] keys;
+    private final String[] values;
+    private final int size;
+    private final int mask;
+    private int hash; // Computed lazily, 0 if not computed yet
+
+    private MethodMap(String[] keys, String[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+        this.mask = keys.length - 1;
+    }
+
+    static MethodMap copyOf(Map<String, String> map) {
+        if (map instanceof MethodMap) {
+            return (MethodMap) map;
+        } else if (map.isEmpty()) {
+            return EMPTY;
+        }
+
+        int capacity = Integer.highestOneBit(map.size() * 2 - 1) << 1;
+        String[] keys = new String[capacity];
+        String[] values = new String[capacity];
+        int mask = capacity - 1;
+
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            String key = entry.getKey();
+            int i = spread(key.hashCode()) & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+
+            keys[i] = key;
+            values[i] = entry.getValue();
+        }
+
+        return new MethodMap(keys, values, map.size());
+    }
+
+    /**
+     * Merges the mappings inherited from the super class and the interfaces
+     * of a class, with later mappings replacing earlier ones.
+     *
+     * @param parents The mappings of the super class and the interfaces, in
+     *        this order, each may be {@code null}
+     * @return The shared merged mappings, or {@code null} if none of the
+     *         parents has any mappings
+     */
+    static MethodMap inherit(MethodMap[] parents) {
+        MethodMap single = null;
+        boolean multiple = false;
+        for (MethodMap mappings : parents) {
+            if (mappings != null && mappings.size > 0 && mappings != single) {
+                if (single == null) {
+                    single = mappings;
+                } else {
+                    multiple = true;
+                }
+            }
+        }
+
+        if (!multiple) {
+            return single;
+        }
+
+        Map<String, String> builder = Maps.newHashMap();
+        for (MethodMap mappings : parents) {
+            if (mappings != null) {
+                builder.putAll(mappings);
+            }
+        }
+
+        return INTERNER.intern(copyOf(builder));
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    // Computes the hash code of name + desc using the cached hash codes of both strings
+    private static int hash(String name, String desc) {
+        int length = desc.length();
+        int power;
+        if (length < POWERS) {
+            power = POWERS_OF_31[length];
+        } else {
+            power = 1;
+            for (int base = 31; length > 0; length >>= 1, base *= base) {
+                if ((length & 1) != 0) {
+                    power *= base;
+                }
+            }
+        }
+
+        return name.hashCode() * power + desc.hashCode();
+    }
+
+    /**
+     * Gets the new name of the method with the specified name and descriptor.
+     *
+     * @param name The method name
+     * @param desc The method descriptor
+     * @return The new method name, or {@code null} if not found
+     */
+    String get(String name, String desc) {
+        if (this.size == 0) {
+            return null;
+        }
+
+        int nameLength = name.length();
+        int length = nameLength + desc.length();
+        for (int i = spread(hash(name, desc)) & this.mask; ; i = (i + 1) & this.mask) {
+            String key = this.keys[i];
+            if (key == null) {
+                return null;
+            }
+
+            if (key.length() == length && key.startsWith(name) && key.regionMatches(nameLength, desc, 0, desc.length())) {
+                return this.values[i];
+            }
+        }
+    }
+
+    @Override
+    public String get(Object key) {
+        if (this.size == 0 || !(key instanceof String)) {
+            return null;
+        }
+
+        for (int i = spread(key.hashCode()) & this.mask; ; i = (i + 1) & this.mask) {
+            String current = this.keys[i];
+            if (current == null) {
+                return null;
+            } else if (current.equals(key)) {
+                return this.values[i];
+            }
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = this.hash;
+        if (hash == 0) {
+            for (int i = 0; i < this.keys.length; i++) {
+                if (this.keys[i] != null) {
+                    hash += this.keys[i].hashCode() ^ this.values[i].hashCode();
+                }
+            }
+            this.hash = hash;
+        }
+
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        } else if (!(o instanceof MethodMap)) {
+            return super.equals(o);
+        }
+
+        MethodMap other = (MethodMap) o;
+        if (this.size != other.size || hashCode() != other.hashCode()) {
+            return false;
+        }
+
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != null && !this.values[i].equals(other.get(this.keys[i]))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<Entry<String, String>>() {
+
+                    private int pos = advance(0);
+
+                    private int advance(int pos) {
+                        while (pos < keys.length && keys[pos] == null) {
+                            pos++;
+                        }
+                        return pos;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return this.pos < keys.length;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+
+                        Entry<String, String> entry = new SimpleImmutableEntry<String, String>(keys[this.pos], values[this.pos]);
+                        this.pos = advance(this.pos + 1);
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                };
+            }
+
+            @Override
+            public int size() {
+                return MethodMap.this.size;
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Checks if the constant pool of a class contains one of the names of the
+ * mapped methods, directly on the class bytes. Classes that don't contain
+ * any of the names can neither declare nor invoke a mapped method, so they
+ * don't need to be parsed at all.
+ *
+ * <p>The names are stored in the modified UTF-8 encoding used by class files
+ * in an open addressing hash table, so looking up a name from the constant
+ * pool doesn't need to decode it or allocate any objects.</p>
+ */
+final class MethodNameFilter {
+
+    // Constant pool tags
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private final byte[][] names;
+    private final int mask;
+
+    MethodNameFilter(Collection<String> names) {
+        int size = Integer.highestOneBit(Math.max(names.size(), 1) * 2) * 2;
+        this.names = new byte[size][];
+        this.mask = size - 1;
+
+        for (String name : names) {
+            byte[] encoded = encode(name);
+            int i = hash(encoded, 0, encoded.length) & this.mask;
+            while (this.names[i] != null) {
+                if (Arrays.equals(this.names[i], encoded)) {
+                    break;
+                }
+                i = (i + 1) & this.mask;
+            }
+            this.names[i] = encoded;
+        }
+    }
+
+    /**
+     * Returns whether the constant pool of the specified class contains one
+     * of the names. Returns {@code true} as well if the class can't be parsed,
+     * so the error is reported when the class is read by ASM.
+     */
+    boolean matches(byte[] b) {
+        try {
+            if (readInt(b, 0) != MAGIC) {
+                return true;
+            }
+
+            int count = readUnsignedShort(b, 8);
+            int pos = 10;
+            for (int i = 1; i < count; i++) {
+                switch (b[pos]) {
+                    case CONSTANT_UTF8:
+                        int length = readUnsignedShort(b, pos + 1);
+                        if (contains(b, pos + 3, length)) {
+                            return true;
+                        }
+                        pos += 3 + length;
+                        break;
+                    case CONSTANT_LONG:
+                    case CONSTANT_DOUBLE:
+                        pos += 9;
+                        i++;
+                        break;
+                    case CONSTANT_INTEGER:
+                    case CONSTANT_FLOAT:
+                    case CONSTANT_FIELDREF:
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                    case CONSTANT_NAME_AND_TYPE:
+                    case CONSTANT_DYNAMIC:
+                    case CONSTANT_INVOKE_DYNAMIC:
+                        pos += 5;
+                        break;
+                    case CONSTANT_METHOD_HANDLE:
+                        pos += 4;
+                        break;
+                    case CONSTANT_CLASS:
+                    case CONSTANT_STRING:
+                    case CONSTANT_METHOD_TYPE:
+                    case CONSTANT_MODULE:
+                    case CONSTANT_PACKAGE:
+                        pos += 3;
+                        break;
+                    default:
+                        return true;
+                }
+            }
+
+            return false;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return true;
+        }
+    }
+
+    private boolean contains(byte[] b, int off, int len) {
+        int i = hash(b, off, len) & this.mask;
+        byte[] name;
+        while ((name = this.names[i]) != null) {
+            if (equals(name, b, off, len)) {
+                return true;
+            }
+            i = (i + 1) & this.mask;
+        }
+
+        return false;
+    }
+
+    private static boolean equals(byte[] name, byte[] b, int off, int len) {
+        if (name.length != len) {
+            return false;
+        }
+
+        for (int i = 0; i < len; i++) {
+            if (name[i] != b[off + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int hash(byte[] b, int off, int len) {
+        int hash = len;
+        for (int i = off, end = off + len; i < end; i++) {
+            hash = 31 * hash + b[i];
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int readUnsignedShort(byte[] b, int pos) {
+        return ((b[pos] & 0xFF) << 8) | (b[pos + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] b, int pos) {
+        return ((b[pos] & 0xFF) << 24) | ((b[pos + 1] & 0xFF) << 16) | ((b[pos + 2] & 0xFF) << 8) | (b[pos + 3] & 0xFF);
+    }
+
+    // Encodes the name in the modified UTF-8 encoding of class files
+    private static byte[] encode(String name) {
+        byte[] result = new byte[name.length() * 3];
+        int pos = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 0x01 && c <= 0x7F) {
+                result[pos++] = (byte) c;
+            } else if (c <= 0x7FF) {
+                result[pos++] = (byte) (0xC0 | (c >> 6));
+                result[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                result[pos++] = (byte) (0xE0 | (c >> 12));
+                result[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                result[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        return Arrays.copyOf(result, pos);
+    }
+
+}
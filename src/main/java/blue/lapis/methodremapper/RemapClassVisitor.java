@@ -26,6 +26,8 @@
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.objectweb.asm.Opcodes.ACC_SYNTHETIC;
 
+import blue.lapis.methodremapper.metrics.RemapListener.Counter;
+
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
 
@@ -37,7 +39,8 @@
  */
 public class RemapClassVisitor extends RemapInvokeClassVisitor {
 
-    private final Map<String, String> mappings;
+    private final MethodMap mappings;
+    private int methods;
 
     /**
      * Creates a new {@link RemapClassVisitor} using the specified
@@ -49,18 +52,28 @@ public class RemapClassVisitor extends RemapInvokeClassVisitor {
      */
     public RemapClassVisitor(ClassVisitor cv, Remapper remapper, Map<String, String> mappings) {
         super(cv, remapper);
-        this.mappings = checkNotNull(mappings, "mappings");
+        this.mappings = MethodMap.copyOf(checkNotNull(mappings, "mappings"));
     }
 
     @Override
     public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-        String mapping = this.mappings.get(name + desc);
+        String mapping = this.mappings.get(name, desc);
         if (mapping != null) {
             name = mapping;
             access |= ACC_SYNTHETIC;
+            this.methods++;
         }
 
         return super.visitMethod(access, name, desc, signature, exceptions);
     }
 
+    @Override
+    public void visitEnd() {
+        if (this.methods > 0) {
+            this.remapper.getListener().increment(Counter.METHODS_REMAPPED, this.methods);
+        }
+
+        super.visitEnd();
+    }
+
 }
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Represents the index of a previous {@link JarRemapper} run, used to remap
+ * only the classes that have changed since then.
+ *
+ * <p>For each class, the index stores the checksum and size of its input
+ * entry, its super class and interfaces, the owners of the mapped methods it
+ * invokes and a fingerprint of its resolved mappings. The index also stores
+ * the fingerprints of the invoked classes outside of the JAR file, e.g. in
+ * libraries or the Java runtime. A class only needs to be remapped again if
+ * its own bytes have changed or if the mappings of the class or one of the
+ * classes it invokes have changed.</p>
+ */
+public final class RemapIndex {
+
+    private static final int MAGIC = 0x524D4958;
+    private static final int VERSION = 2;
+
+    private final String key;
+    private final ImmutableMap<String, ClassEntry> classes;
+    private final ImmutableMap<String, Long> owners;
+
+    RemapIndex(String key, Map<String, ClassEntry> classes, Map<String, Long> owners) {
+        this.key = checkNotNull(key, "key");
+        this.classes = ImmutableMap.copyOf(classes);
+        this.owners = ImmutableMap.copyOf(owners);
+    }
+
+    /**
+     * Gets the key of this index. Indexes with a different key (e.g. created
+     * using a different mapping configuration) can't be reused.
+     *
+     * @return The key of this index
+     */
+    public String getKey() {
+        return this.key;
+    }
+
+    ClassEntry get(String name) {
+        return this.classes.get(name);
+    }
+
+    Map<String, ClassEntry> getClasses() {
+        return this.classes;
+    }
+
+    // The fingerprints of the invoked classes that are not part of the JAR file
+    Map<String, Long> getOwners() {
+        return this.owners;
+    }
+
+    /**
+     * Loads the index from the specified {@link File}. The index is only
+     * returned if it was created using the same key and the output file
+     * wasn't changed since it was saved.
+     *
+     * @param file The file to load the index from
+     * @param key The key the index must match
+     * @param output The output file the index was saved for
+     * @return The loaded index, or {@code null} if it doesn't exist or
+     *         can't be used
+     * @throws IOException If the index couldn't be read
+     */
+    public static RemapIndex load(File file, String key, File output) throws IOException {
+        if (!file.isFile() || !output.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key)
+                    || in.readLong() != output.length() || in.readLong() != output.lastModified()) {
+                return null;
+            }
+
+            int count = in.readInt();
+            Map<String, ClassEntry> classes = Maps.newHashMapWithExpectedSize(count);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                long crc = in.readLong();
+                long size = in.readLong();
+                String superName = in.readUTF();
+                String[] interfaces = readArray(in);
+                String[] invokedOwners = readArray(in);
+                long fingerprint = in.readLong();
+
+                classes.put(name, new ClassEntry(crc, size, superName.isEmpty() ? null : superName, interfaces, invokedOwners,
+                        fingerprint));
+            }
+
+            count = in.readInt();
+            Map<String, Long> owners = Maps.newHashMapWithExpectedSize(count);
+            for (int i = 0; i < count; i++) {
+                owners.put(in.readUTF(), in.readLong());
+            }
+
+            return new RemapIndex(key, classes, owners);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String[] readArray(DataInputStream in) throws IOException {
+        String[] result = new String[in.readUnsignedShort()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = in.readUTF();
+        }
+        return result;
+    }
+
+    /**
+     * Saves this index to the specified {@link File}. The output file must be
+     * completely written before the index is saved.
+     *
+     * @param file The file to save the index to
+     * @param output The output file of the remapper
+     * @throws IOException If the index couldn't be written
+     */
+    public void save(File file, File output) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(this.key);
+            out.writeLong(output.length());
+            out.writeLong(output.lastModified());
+
+            out.writeInt(this.classes.size());
+            for (Map.Entry<String, ClassEntry> entry : this.classes.entrySet()) {
+                ClassEntry value = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(value.crc);
+                out.writeLong(value.size);
+                out.writeUTF(value.superName != null ? value.superName : "");
+                writeArray(out, value.interfaces);
+                writeArray(out, value.invokedOwners);
+                out.writeLong(value.fingerprint);
+            }
+
+            out.writeInt(this.owners.size());
+            for (Map.Entry<String, Long> entry : this.owners.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeArray(DataOutputStream out, String[] array) throws IOException {
+        out.writeShort(array.length);
+        for (String value : array) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Computes the fingerprints of the resolved mappings of all classes. The
+     * hierarchy of the classes in the map is taken from their entries, all
+     * other classes are resolved using the {@link Remapper}.
+     */
+    static Map<String, Long> computeFingerprints(Remapper remapper, Map<String, ClassEntry> classes) throws IOException {
+        Resolver resolver = new Resolver(remapper, classes);
+        Map<String, Long> result = Maps.newHashMapWithExpectedSize(classes.size());
+        for (String name : classes.keySet()) {
+            result.put(name, fingerprint(resolver.resolve(name)));
+        }
+        return result;
+    }
+
+    /**
+     * Computes the fingerprints of the resolved mappings of all invoked
+     * classes that are not in the map, e.g. classes of libraries.
+     */
+    static Map<String, Long> computeOwnerFingerprints(Remapper remapper, Map<String, ClassEntry> classes) throws IOException {
+        Map<String, Long> result = Maps.newHashMap();
+        for (ClassEntry entry : classes.values()) {
+            for (String owner : entry.invokedOwners) {
+                if (!classes.containsKey(owner) && !result.containsKey(owner)) {
+                    result.put(owner, fingerprint(remapper.getMappings(owner)));
+                }
+            }
+        }
+        return result;
+    }
+
+    static long fingerprint(Map<String, String> mappings) {
+        if (mappings == null || mappings.isEmpty()) {
+            return 0;
+        }
+
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (Map.Entry<String, String> entry : new TreeMap<String, String>(mappings).entrySet()) {
+            hasher.putString(entry.getKey(), UTF_8).putByte((byte) 0).putString(entry.getValue(), UTF_8).putByte((byte) 0);
+        }
+        return hasher.hash().asLong();
+    }
+
+    static final class ClassEntry {
+
+        final long crc;
+        final long size;
+        final String superName;
+        final String[] interfaces;
+        final String[] invokedOwners;
+        final long fingerprint;
+
+        ClassEntry(long crc, long size, String superName, String[] interfaces, String[] invokedOwners, long fingerprint) {
+            this.crc = crc;
+            this.size = size;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.invokedOwners = invokedOwners;
+            this.fingerprint = fingerprint;
+        }
+
+        ClassEntry withFingerprint(long fingerprint) {
+            return new ClassEntry(this.crc, this.size, this.superName, this.interfaces, this.invokedOwners, fingerprint);
+        }
+
+    }
+
+    // Resolves the mappings the same way as the Remapper, but without loading the classes in the index
+    private static final class Resolver {
+
+        private final Remapper remapper;
+        private final Map<String, ClassEntry> classes;
+        private final Map<String, Map<String, String>> resolved = Maps.newHashMap();
+        private final Set<String> resolving = Sets.newHashSet();
+
+        Resolver(Remapper remapper, Map<String, ClassEntry> classes) {
+            this.remapper = remapper;
+            this.classes = classes;
+        }
+
+        Map<String, String> resolve(String name) throws IOException {
+            if (name == null) {
+                return null;
+            }
+
+            ClassEntry entry = this.classes.get(name);
+            if (entry == null || this.remapper.isMappedOwner(name)) {
+                return this.remapper.getMappings(name);
+            }
+
+            if (this.resolved.containsKey(name)) {
+                return this.resolved.get(name);
+            }
+
+            if (!this.resolving.add(name)) {
+                return null; // Circular hierarchy
+            }
+
+            Map<String, String> builder = merge(null, resolve(entry.superName));
+            for (String iface : entry.interfaces) {
+                builder = merge(builder, resolve(iface));
+            }
+
+            this.resolving.remove(name);
+            this.resolved.put(name, builder);
+            return builder;
+        }
+
+        private static Map<String, String> merge(Map<String, String> builder, Map<String, String> mappings) {
+            if (mappings != null) {
+                if (builder == null) {
+                    builder = Maps.newHashMap();
+                }
+
+                builder.putAll(mappings);
+            }
+
+            return builder;
+        }
+
+    }
+
+}
@@ -26,6 +26,8 @@
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.objectweb.asm.Opcodes.ASM5;
 
+import blue.lapis.methodremapper.metrics.RemapListener.Counter;
+
 import com.google.common.base.Throwables;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
@@ -38,7 +40,8 @@
  */
 public class RemapInvokeClassVisitor extends ClassVisitor {
 
-    private final Remapper remapper;
+    final Remapper remapper;
+    private int invokes;
 
     /**
      * Creates a new {@link RemapInvokeClassVisitor} using the specified
@@ -59,8 +62,13 @@ public MethodVisitor visitMethod(int access, String name, String desc, String si
             @Override
             public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
                 try {
-                    String mapping = remapper.getMapping(owner, name + desc);
-                    super.visitMethodInsn(opcode, owner, mapping != null ? mapping : name, desc, itf);
+                    String mapping = remapper.getMapping(owner, name, desc);
+                    if (mapping != null) {
+                        name = mapping;
+                        invokes++;
+                    }
+
+                    super.visitMethodInsn(opcode, owner, name, desc, itf);
                 } catch (IOException e) {
                     throw Throwables.propagate(e);
                 }
@@ -69,4 +77,13 @@ public void visitMethodInsn(int opcode, String owner, String name, String desc,
         };
     }
 
+    @Override
+    public void visitEnd() {
+        if (this.invokes > 0) {
+            this.remapper.getListener().increment(Counter.INVOKES_REMAPPED, this.invokes);
+        }
+
+        super.visitEnd();
+    }
+
 }
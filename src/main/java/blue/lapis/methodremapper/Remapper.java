@@ -25,11 +25,20 @@
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import blue.lapis.methodremapper.metrics.RemapListener;
+import blue.lapis.methodremapper.metrics.RemapListener.Counter;
+import blue.lapis.methodremapper.metrics.RemapListener.Phase;
+import blue.lapis.methodremapper.provider.ClassHeader;
 import blue.lapis.methodremapper.provider.ClassProvider;
+import blue.lapis.methodremapper.provider.HierarchyProvider;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableTable;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
@@ -37,18 +46,63 @@
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Represents the main remapper that will remap given classes using the provided
  * method mappings.
+ *
+ * <p>A {@link Remapper} is safe to be shared across multiple threads, as long
+ * as the {@link ClassProvider} it was created with is thread-safe as well. The
+ * mappings of each class are resolved exactly once, other threads requesting
+ * the same class will wait until the resolution has completed.</p>
+ *
+ * <p>Metrics about the remapping process can be collected using a
+ * {@link RemapListener}.</p>
  */
 public class Remapper {
 
     static final Logger logger = LoggerFactory.getLogger(Remapper.class);
 
+    // Marker for classes without mappings, ConcurrentHashMap doesn't permit null values
+    private static final MethodMap NO_MAPPINGS = MethodMap.EMPTY;
+
+    // Constant pool tags of method references
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+
+    // Only the Java runtime may define classes in the java package, and its classes only inherit from other runtime classes
+    private static final String JAVA_PACKAGE = "java/";
+    private static final String[] RUNTIME_PACKAGES = {JAVA_PACKAGE, "javax/", "jdk/", "sun/", "com/sun/"};
+
+    // The total time recorded by the phases of the current thread, see startTimer
+    private static final ThreadLocal<long[]> RECORDED_TIME = new ThreadLocal<long[]>() {
+
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+
+    };
+
     private final ClassProvider provider;
-    private final Map<String, Map<String, String>> classes;
+    private final Mappings mappings;
+    private final Set<String> methodNames;
+    private final MethodNameFilter methodNameFilter;
+    private final boolean skipJavaPackage;
+
+    private final RemapListener listener;
+    private final boolean timed;
+
+    // Contains either the resolved mappings of a class or its pending Resolution
+    private final ConcurrentMap<String, Object> classes = new ConcurrentHashMap<String, Object>();
+    private final ConcurrentMap<Thread, Resolution> waiting = new ConcurrentHashMap<Thread, Resolution>();
 
     /**
      * Creates a new {@link Remapper} instance using the specified provider and
@@ -58,8 +112,47 @@ public class Remapper {
      * @param mappings The method mappings to use
      */
     public Remapper(ClassProvider provider, ImmutableTable<String, String, String> mappings) {
+        this(provider, new TableMappings(mappings));
+    }
+
+    /**
+     * Creates a new {@link Remapper} instance using the specified provider and
+     * {@link Mappings}.
+     *
+     * @param provider The provider of the classes that will be scanned
+     * @param mappings The method mappings to use
+     */
+    public Remapper(ClassProvider provider, Mappings mappings) {
+        this(provider, mappings, RemapListener.NONE);
+    }
+
+    /**
+     * Creates a new {@link Remapper} instance using the specified provider,
+     * {@link Mappings} and {@link RemapListener}.
+     *
+     * @param provider The provider of the classes that will be scanned
+     * @param mappings The method mappings to use
+     * @param listener The listener to report the metrics to
+     */
+    public Remapper(ClassProvider provider, Mappings mappings, RemapListener listener) {
         this.provider = checkNotNull(provider, "provider");
-        this.classes = Maps.newHashMap(mappings.rowMap());
+        this.mappings = checkNotNull(mappings, "mappings");
+        this.methodNames = mappings.getMethodNames();
+        this.methodNameFilter = new MethodNameFilter(this.methodNames);
+        this.skipJavaPackage = !containsRuntimeClass(mappings);
+        this.listener = checkNotNull(listener, "listener");
+        this.timed = listener != RemapListener.NONE;
+    }
+
+    // Creates a new remapper with the mappings and the listener of an existing remapper, but without its resolved classes
+    Remapper(Remapper remapper, ClassProvider provider) {
+        this.provider = checkNotNull(provider, "provider");
+        this.mappings = remapper.mappings;
+        this.methodNames = remapper.methodNames;
+        this.methodNameFilter = remapper.methodNameFilter;
+        this.skipJavaPackage = remapper.skipJavaPackage;
+        this.listener = remapper.listener;
+        this.timed = remapper.timed;
     }
 
     /**
@@ -71,6 +164,55 @@ public ClassProvider getProvider() {
         return this.provider;
     }
 
+    /**
+     * Gets the {@link RemapListener} of this {@link Remapper}.
+     *
+     * @return The listener of this remapper
+     */
+    public RemapListener getListener() {
+        return this.listener;
+    }
+
+    // Starts measuring a phase, relative to the time already recorded on this thread to exclude nested phases
+    long startTimer() {
+        return this.timed ? System.nanoTime() - RECORDED_TIME.get()[0] : 0;
+    }
+
+    void stopTimer(Phase phase, long start) {
+        if (this.timed) {
+            long[] recorded = RECORDED_TIME.get();
+            long nanos = System.nanoTime() - recorded[0] - start;
+            recorded[0] += nanos;
+            this.listener.record(phase, nanos);
+        }
+    }
+
+    private ClassReader load(String name) throws IOException {
+        long start = startTimer();
+        ClassReader reader = this.provider.getClass(name);
+        stopTimer(Phase.LOAD, start);
+        this.listener.increment(Counter.PROVIDER_LOADS, 1);
+        return reader;
+    }
+
+    ClassHeader loadHeader(String name) throws IOException {
+        if (!(this.provider instanceof HierarchyProvider)) {
+            ClassReader reader = load(name);
+            return reader != null ? new ClassHeader(name, reader.getSuperName(), getInterfaces(reader)) : null;
+        }
+
+        long start = startTimer();
+        ClassHeader header = ((HierarchyProvider) this.provider).getHeader(name);
+        stopTimer(Phase.LOAD, start);
+        this.listener.increment(Counter.PROVIDER_LOADS, 1);
+        return header;
+    }
+
+    private static List<String> getInterfaces(ClassReader reader) {
+        String[] interfaces = reader.getInterfaces();
+        return interfaces != null ? Arrays.asList(interfaces) : ImmutableList.<String>of();
+    }
+
     /**
      * Gets the mapping (new method name) for the specified method.
      *
@@ -90,51 +232,385 @@ public String getMapping(String owner, String method) throws IOException {
         return null;
     }
 
-    private Map<String, String> getMappings(String name, ClassReader reader) throws IOException {
-        if (this.classes.containsKey(name)) {
-            return this.classes.get(name);
+    /**
+     * Gets the mapping (new method name) for the specified method.
+     *
+     * @param owner The full qualified owning class of the method in internal
+     *        format, e.g. java/lang/Object
+     * @param name The method name
+     * @param desc The method descriptor
+     * @return The mapping (new method name) of the specified method, or
+     *         {@code null} if not found
+     * @throws IOException If loading classes from the provider fails
+     */
+    public String getMapping(String owner, String name, String desc) throws IOException {
+        if (!this.methodNames.contains(name)) {
+            return null; // Avoid resolving the owner if the method name isn't mapped at all
+        }
+
+        MethodMap mappings = getMappings(owner, null);
+        if (mappings != null) {
+            return mappings.get(name, desc);
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets all mappings for the specified class, including the mappings
+     * inherited from its super classes and interfaces.
+     *
+     * @param owner The full qualified class name in internal format, e.g.
+     *        java/lang/Object
+     * @return The mappings of the class (method name and descriptor to new
+     *         method name), or {@code null} if there are no mappings
+     * @throws IOException If loading classes from the provider fails
+     */
+    public Map<String, String> getMappings(String owner) throws IOException {
+        return getMappings(owner, null);
+    }
+
+    /**
+     * Creates a snapshot of the mappings of all classes resolved so far,
+     * including the mappings inherited from their super classes and
+     * interfaces, as well as all classes with defined mappings. Classes
+     * without mappings are included with an empty map.
+     *
+     * <p>The snapshot can be saved using
+     * {@link BinaryMappings#write(Map, java.io.File)} and used instead of the
+     * original mappings to remap the same classes later without loading the
+     * class hierarchy again. Since classes with defined mappings don't inherit
+     * other mappings, all classes in the snapshot are resolved immediately.</p>
+     *
+     * @return The mappings of all resolved classes (method name and
+     *         descriptor to new method name), by class name
+     */
+    public Map<String, Map<String, String>> getSnapshot() {
+        Map<String, Map<String, String>> snapshot = Maps.newHashMap();
+        for (Map.Entry<String, Object> entry : this.classes.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof MethodMap) {
+                snapshot.put(entry.getKey(), value != NO_MAPPINGS ? (MethodMap) value : ImmutableMap.<String, String>of());
+            }
+        }
+
+        for (String owner : this.mappings.getOwners()) {
+            if (!snapshot.containsKey(owner)) {
+                Map<String, String> mappings = this.mappings.get(owner);
+                snapshot.put(owner, mappings != null ? mappings : ImmutableMap.<String, String>of());
+            }
+        }
+
+        return snapshot;
+    }
+
+    boolean isMappedOwner(String owner) {
+        return this.mappings.contains(owner);
+    }
+
+    /**
+     * Returns the mappings of the class if they are known without resolving
+     * its class hierarchy, i.e. if the class was already resolved or has
+     * defined mappings. Returns {@link MethodMap#EMPTY} for classes without
+     * mappings and {@code null} if the class needs to be resolved.
+     */
+    MethodMap getKnownMappings(String name) {
+        if (this.skipJavaPackage && name.startsWith(JAVA_PACKAGE)) {
+            return NO_MAPPINGS;
+        }
+
+        Object value = this.classes.get(name);
+        if (value instanceof MethodMap) {
+            return (MethodMap) value;
+        }
+
+        if (this.mappings.contains(name)) {
+            Map<String, String> mappings = this.mappings.get(name);
+            return mappings != null && !mappings.isEmpty() ? MethodMap.copyOf(mappings) : NO_MAPPINGS;
+        }
+
+        return null;
+    }
+
+    /**
+     * Stores the mappings of a class resolved by a {@link HierarchyResolver},
+     * unless the class was resolved in the meantime.
+     */
+    void putResolved(String name, MethodMap mappings) {
+        this.classes.putIfAbsent(name, mappings != null ? mappings : NO_MAPPINGS);
+    }
+
+    private static boolean containsRuntimeClass(Mappings mappings) {
+        for (String prefix : RUNTIME_PACKAGES) {
+            if (mappings.hasMappingsWithPrefix(prefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private MethodMap getMappings(String name, ClassReader reader) throws IOException {
+        if (this.skipJavaPackage && name.startsWith(JAVA_PACKAGE)) {
+            // None of the runtime classes have mappings, so classes in the java package can't inherit any
+            return null;
+        }
+
+        Object value = this.classes.get(name);
+        if (value == null) {
+            Resolution resolution = new Resolution(name);
+            value = this.classes.putIfAbsent(name, resolution);
+            if (value == null) {
+                this.listener.increment(Counter.CACHE_MISSES, 1);
+                return resolve(resolution, reader);
+            }
+        }
+
+        this.listener.increment(Counter.CACHE_HITS, 1);
+
+        if (value instanceof Resolution) {
+            value = await((Resolution) value);
+        }
+
+        return value != NO_MAPPINGS ? (MethodMap) value : null;
+    }
+
+    private MethodMap resolve(Resolution resolution, ClassReader reader) throws IOException {
+        MethodMap mappings = null;
+        boolean success = false;
+        long start = startTimer();
+        try {
+            mappings = createMappings(resolution.name, reader);
+            success = true;
+        } finally {
+            stopTimer(Phase.RESOLVE, start);
+
+            if (success) {
+                MethodMap result = mappings != null ? mappings : NO_MAPPINGS;
+                this.classes.replace(resolution.name, resolution, result);
+                resolution.complete(result);
+            } else {
+                // Allow the resolution to be retried later
+                this.classes.remove(resolution.name, resolution);
+                resolution.complete(null);
+            }
+        }
+
+        return mappings;
+    }
+
+    private MethodMap await(Resolution resolution) throws IOException {
+        Thread current = Thread.currentThread();
+
+        // Register before checking, so if two threads start waiting for each other at least one of them sees the cycle
+        this.waiting.put(current, resolution);
+        if (isCircular(resolution, current)) {
+            this.waiting.remove(current);
+
+            // The class is (indirectly) inheriting from itself, the mappings are still being resolved further up the stack
+            logger.warn("Circular class hierarchy detected for {}", resolution.name);
+            return NO_MAPPINGS;
+        }
+
+        try {
+            Uninterruptibles.awaitUninterruptibly(resolution.latch);
+        } finally {
+            this.waiting.remove(current);
+        }
+
+        if (resolution.result == null) {
+            throw new IOException("Failed to resolve mappings for " + resolution.name);
+        }
+
+        return resolution.result;
+    }
+
+    private boolean isCircular(Resolution resolution, Thread current) {
+        // Follow the chain of threads waiting for each other, if it ends at the current thread we would deadlock
+        while (resolution != null && resolution.latch.getCount() > 0) {
+            if (resolution.owner == current) {
+                return true;
+            }
+
+            resolution = this.waiting.get(resolution.owner);
+        }
+
+        return false;
+    }
+
+    private MethodMap createMappings(String name, ClassReader reader) throws IOException {
+        if (this.mappings.contains(name)) {
+            Map<String, String> mappings = this.mappings.get(name);
+            return mappings != null && !mappings.isEmpty() ? MethodMap.copyOf(mappings) : null;
         }
 
         logger.trace("Creating mappings for {}", name);
 
-        if (reader == null) {
+        // Only the class header is needed to resolve the hierarchy
+        ClassHeader header;
+        if (reader != null) {
+            header = new ClassHeader(name, reader.getSuperName(), getInterfaces(reader));
+        } else {
             logger.trace("Loading class {}", name);
-            reader = this.provider.getClass(name);
+            header = loadHeader(name);
         }
 
-        Map<String, String> mappings = null;
-        if (reader != null) {
-            Map<String, String> builder = findMappings(reader.getSuperName(), null);
+        if (header == null) {
+            return null;
+        }
 
-            String[] interfaces = reader.getInterfaces();
-            if (interfaces != null) {
-                for (String iface : interfaces) {
-                    builder = findMappings(iface, builder);
-                }
+        // Classes inheriting the same mappings share them, see MethodMap.inherit
+        List<String> interfaces = header.getInterfaces();
+        MethodMap[] parents = new MethodMap[1 + interfaces.size()];
+        if (header.getSuperName() != null) {
+            parents[0] = getMappings(header.getSuperName(), null);
+        }
+        for (int i = 0; i < interfaces.size(); i++) {
+            parents[i + 1] = getMappings(interfaces.get(i), null);
+        }
+
+        return MethodMap.inherit(parents);
+    }
+
+    /**
+     * Checks if the specified class may need to be remapped. This is the case
+     * if the class declares or invokes a method with the same name as one of
+     * the mapped methods. The check only scans the constant pool and the
+     * method declarations of the class, it doesn't need to resolve the class
+     * hierarchy. {@link #remap(ClassReader)} returns the original class bytes
+     * unchanged for classes that don't need to be remapped.
+     *
+     * @param reader The class reader of the class to check
+     * @return {@code true} if the class may need to be remapped
+     */
+    public boolean isRemapRequired(ClassReader reader) {
+        char[] buf = new char[reader.getMaxStringLength()];
+
+        // Scan method references in the constant pool for invoked methods
+        if (findMethodRef(reader, 1, buf) > 0) {
+            return true;
+        }
+
+        // Skip to the method declarations
+        int pos = reader.header + 6;
+        pos += 2 + reader.readUnsignedShort(pos) * 2; // Interfaces
+
+        int count = reader.readUnsignedShort(pos);
+        pos += 2;
+        for (int i = 0; i < count; i++) {
+            pos = skipMember(reader, pos); // Fields
+        }
+
+        count = reader.readUnsignedShort(pos);
+        pos += 2;
+        for (int i = 0; i < count; i++) {
+            if (this.methodNames.contains(reader.readUTF8(pos + 2, buf))) {
+                return true;
             }
 
-            if (builder != null) {
-                mappings = ImmutableMap.copyOf(builder);
+            pos = skipMember(reader, pos);
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks if the specified class may need to be remapped, without parsing
+     * it. This is the case if one of the names of the mapped methods appears
+     * anywhere in the constant pool of the class. The check is less precise
+     * than {@link #isRemapRequired(ClassReader)}, but much faster, since it
+     * doesn't create a {@link ClassReader} and doesn't decode any strings.
+     *
+     * @param bytes The class bytes to check
+     * @return {@code true} if the class may need to be remapped
+     */
+    public boolean isRemapRequired(byte[] bytes) {
+        return this.methodNameFilter.matches(bytes);
+    }
+
+    /**
+     * Collects the owners of all invoked methods with the same name as one of
+     * the mapped methods. The remapped class only depends on the mappings of
+     * these classes and the class itself.
+     */
+    Set<String> getInvokedOwners(ClassReader reader) {
+        char[] buf = new char[reader.getMaxStringLength()];
+        Set<String> owners = null;
+        for (int i = findMethodRef(reader, 1, buf); i > 0; i = findMethodRef(reader, i + 1, buf)) {
+            if (owners == null) {
+                owners = Sets.newHashSet();
             }
+
+            owners.add(reader.readClass(reader.getItem(i), buf));
         }
 
-        this.classes.put(name, mappings);
-        return mappings;
+        return owners != null ? owners : ImmutableSet.<String>of();
     }
 
-    private Map<String, String> findMappings(String name, Map<String, String> builder) throws IOException {
-        if (name != null) {
-            Map<String, String> mappings = getMappings(name, null);
-            if (mappings != null) {
-                if (builder == null) {
-                    builder = Maps.newHashMap();
+    // Returns the index of the next method reference to a method with a mapped name, or 0 if there is none
+    private int findMethodRef(ClassReader reader, int start, char[] buf) {
+        for (int i = start, items = reader.getItemCount(); i < items; i++) {
+            int item = reader.getItem(i);
+            if (item == 0) {
+                continue; // Second slot of long and double constants
+            }
+
+            int tag = reader.readByte(item - 1);
+            if (tag == CONSTANT_METHODREF || tag == CONSTANT_INTERFACE_METHODREF) {
+                int nameAndType = reader.getItem(reader.readUnsignedShort(item + 2));
+                if (this.methodNames.contains(reader.readUTF8(nameAndType, buf))) {
+                    return i;
                 }
+            }
+        }
 
-                builder.putAll(mappings);
+        return 0;
+    }
+
+    // Returns the position after the field or method at the specified position
+    static int skipMember(ClassReader reader, int pos) {
+        int count = reader.readUnsignedShort(pos + 6);
+        pos += 8;
+        for (int i = 0; i < count; i++) {
+            pos += 6 + reader.readInt(pos + 2);
+        }
+
+        return pos;
+    }
+
+    // Returns the start of the class in the array of the class reader
+    static int getClassStart(ClassReader reader) {
+        // The first constant pool entry follows the magic, the version, the constant pool count and its own tag
+        return reader.getItem(1) - 11;
+    }
+
+    // Returns the end of the class in the array of the class reader
+    static int getClassEnd(ClassReader reader) {
+        int pos = reader.header + 6;
+        pos += 2 + reader.readUnsignedShort(pos) * 2; // Interfaces
+        for (int i = 0; i < 2; i++) {
+            int count = reader.readUnsignedShort(pos);
+            pos += 2;
+            for (int j = 0; j < count; j++) {
+                pos = skipMember(reader, pos); // Fields and methods
             }
         }
 
-        return builder;
+        int count = reader.readUnsignedShort(pos);
+        pos += 2;
+        for (int i = 0; i < count; i++) {
+            pos += 6 + reader.readInt(pos + 2); // Attributes
+        }
+
+        return pos;
+    }
+
+    // Returns the bytes of the class, which may be only a part of the array of the class reader
+    static byte[] getClassBytes(ClassReader reader) {
+        int start = getClassStart(reader);
+        int end = getClassEnd(reader);
+        byte[] b = reader.b;
+        return start == 0 && end == b.length ? b : Arrays.copyOfRange(b, start, end);
     }
 
     /**
@@ -149,7 +625,7 @@ private Map<String, String> findMappings(String name, Map<String, String> builde
      * @throws IOException If loading classes from the provider fails
      */
     public byte[] remap(String name) throws IOException {
-        return remap(this.provider.getClass(name));
+        return remap(load(name));
     }
 
     /**
@@ -164,7 +640,18 @@ public byte[] remap(String name) throws IOException {
      * @throws IOException If loading classes from the provider fails
      */
     public byte[] remap(byte[] bytes) throws IOException {
-        return remap(new ClassReader(bytes));
+        // Avoid parsing classes that can't reference any of the mapped methods
+        long start = startTimer();
+        ClassReader reader = isRemapRequired(bytes) ? new ClassReader(bytes) : null;
+        boolean required = reader != null && isRemapRequired(reader);
+        stopTimer(Phase.SCAN, start);
+
+        if (!required) {
+            this.listener.increment(Counter.CLASSES_SKIPPED, 1);
+            return bytes;
+        }
+
+        return remapRequired(reader);
     }
 
     /**
@@ -179,10 +666,48 @@ public byte[] remap(byte[] bytes) throws IOException {
      * @throws IOException If loading classes from the provider fails
      */
     public byte[] remap(ClassReader reader) throws IOException {
+        long start = startTimer();
+        boolean required = isRemapRequired(reader);
+        stopTimer(Phase.SCAN, start);
+
+        if (!required) {
+            logger.trace("Skipping {}", reader.getClassName());
+            this.listener.increment(Counter.CLASSES_SKIPPED, 1);
+            return getClassBytes(reader);
+        }
+
+        return remapRequired(reader);
+    }
+
+    // Remaps a class that was already checked using isRemapRequired(ClassReader)
+    private byte[] remapRequired(ClassReader reader) throws IOException {
         String name = reader.getClassName();
 
         // Make sure the mappings for this class are loaded
-        Map<String, String> mappings = getMappings(name, reader);
+        MethodMap mappings = getMappings(name, reader);
+
+        // Patch the constant pool indexes directly if possible, which avoids rewriting the whole class
+        long start = startTimer();
+        ClassPatcher patcher = new ClassPatcher(this, reader);
+        byte[] result = patcher.patch(mappings);
+        if (result != null) {
+            stopTimer(Phase.REWRITE, start);
+            if (patcher.getInvokes() == 0 && patcher.getMethods() == 0) {
+                logger.trace("Skipping {}", name);
+                this.listener.increment(Counter.CLASSES_SKIPPED, 1);
+                return result;
+            }
+
+            logger.trace("Patched {}", name);
+            if (patcher.getMethods() > 0) {
+                this.listener.increment(Counter.METHODS_REMAPPED, patcher.getMethods());
+            }
+            if (patcher.getInvokes() > 0) {
+                this.listener.increment(Counter.INVOKES_REMAPPED, patcher.getInvokes());
+            }
+            this.listener.increment(Counter.CLASSES_REMAPPED, 1);
+            return result;
+        }
 
         ClassWriter writer = new ClassWriter(reader, 0);
         ClassVisitor visitor;
@@ -196,7 +721,29 @@ public byte[] remap(ClassReader reader) throws IOException {
         }
 
         reader.accept(visitor, 0);
-        return writer.toByteArray();
+        result = writer.toByteArray();
+        stopTimer(Phase.REWRITE, start);
+
+        this.listener.increment(Counter.CLASSES_REMAPPED, 1);
+        return result;
+    }
+
+    private static final class Resolution {
+
+        private final String name;
+        private final Thread owner = Thread.currentThread();
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile MethodMap result;
+
+        Resolution(String name) {
+            this.name = name;
+        }
+
+        void complete(MethodMap result) {
+            this.result = result;
+            this.latch.countDown();
+        }
+
     }
 
 }
@@ -27,10 +27,13 @@
 
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableTable;
+import com.google.common.io.ByteSource;
 import com.google.common.io.Files;
 import com.google.common.io.LineProcessor;
 import com.google.common.io.Resources;
 
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
@@ -53,6 +56,10 @@
  *
  * <p>Example:
  * {@code java/lang/Object toString()Ljava/lang/Object; asString}</p>
+ *
+ * <p>The {@code load} methods return {@link TextMappings}, which only decode
+ * the mappings of a class once they are requested. They additionally accept
+ * mappings in the binary format of {@link BinaryMappings}.</p>
  */
 public final class RemapperConfig implements LineProcessor<ImmutableTable<String, String, String>> {
 
@@ -128,4 +135,66 @@ public static ImmutableTable<String, String, String> loadMappings(URL resource)
         return Resources.readLines(resource, UTF_8, new RemapperConfig());
     }
 
+    /**
+     * Loads the {@link Mappings} from the specified {@link File} or resource,
+     * either in the text or in the binary format. If a file using the
+     * specified name exists, it will be loaded from the file. If not, it will
+     * be loaded as resource from the JAR.
+     *
+     * @param name The name of the file to load the mappings from
+     * @return The loaded mappings
+     * @throws IOException If the mappings couldn't be loaded
+     */
+    public static Mappings load(String name) throws IOException {
+        File file = new File(name);
+        if (file.exists()) {
+            return load(file);
+        }
+
+        return load(Resources.getResource(name));
+    }
+
+    /**
+     * Loads the {@link Mappings} from the specified {@link File}, either in
+     * the text or in the binary format.
+     *
+     * @param file The file to load the mappings from
+     * @return The loaded mappings
+     * @throws IOException If the mappings couldn't be loaded
+     */
+    public static Mappings load(File file) throws IOException {
+        if (isBinary(Files.asByteSource(file))) {
+            return BinaryMappings.load(file);
+        }
+
+        return TextMappings.load(file);
+    }
+
+    /**
+     * Loads the {@link Mappings} from the specified {@link URL} (resource),
+     * either in the text or in the binary format.
+     *
+     * @param resource The resource to load the mappings from
+     * @return The loaded mappings
+     * @throws IOException If the mappings couldn't be loaded
+     */
+    public static Mappings load(URL resource) throws IOException {
+        if (isBinary(Resources.asByteSource(resource))) {
+            return BinaryMappings.load(resource);
+        }
+
+        return TextMappings.load(resource);
+    }
+
+    private static boolean isBinary(ByteSource source) throws IOException {
+        DataInputStream in = new DataInputStream(source.openStream());
+        try {
+            return in.readInt() == BinaryMappings.MAGIC;
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            in.close();
+        }
+    }
+
 }
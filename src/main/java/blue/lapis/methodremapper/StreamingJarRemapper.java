@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import static blue.lapis.methodremapper.provider.ZipClassProvider.CLASS_EXTENSION;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import blue.lapis.methodremapper.metrics.RemapListener;
+import blue.lapis.methodremapper.provider.ClassHeader;
+import blue.lapis.methodremapper.provider.ClassProvider;
+import blue.lapis.methodremapper.provider.HierarchyProvider;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closer;
+import org.objectweb.asm.ClassReader;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Remaps all classes of a ZIP or JAR file read from an {@link InputStream}
+ * and writes them to an {@link OutputStream}, without random access to the
+ * input or temporary files.
+ *
+ * <p>{@link #remap(InputStream, OutputStream)} reads the input only once.
+ * Classes that don't need to be remapped are written immediately. Classes
+ * whose super classes, interfaces or invoked classes haven't been read yet
+ * are kept in memory until these classes are found in the stream, or until
+ * the end of the stream. Therefore, these classes may be written in a
+ * different order than in the input.</p>
+ *
+ * <p>{@link #remap(ByteSource, OutputStream)} reads the input twice: The
+ * first pass only reads the class headers to resolve the class hierarchy,
+ * the second pass remaps the classes. The order of the entries is kept.</p>
+ *
+ * <p>Classes of the input are resolved before the classes of the optional
+ * classpath, so the classpath shouldn't contain the classes of the input.</p>
+ */
+public class StreamingJarRemapper {
+
+    // Only the Java runtime may define classes in the java package, they won't be found in the stream
+    private static final String JAVA_PACKAGE = "java/";
+
+    private final Mappings mappings;
+    private final ClassProvider classpath;
+    private final RemapListener listener;
+
+    /**
+     * Creates a new {@link StreamingJarRemapper} using the specified
+     * {@link Mappings}.
+     *
+     * @param mappings The method mappings to use
+     */
+    public StreamingJarRemapper(Mappings mappings) {
+        this(mappings, null, RemapListener.NONE);
+    }
+
+    /**
+     * Creates a new {@link StreamingJarRemapper} using the specified
+     * {@link Mappings} and classpath.
+     *
+     * @param mappings The method mappings to use
+     * @param classpath The provider of the classes that are referenced by the
+     *        input but not part of it, may be {@code null}
+     * @param listener The listener to report the metrics to
+     */
+    public StreamingJarRemapper(Mappings mappings, ClassProvider classpath, RemapListener listener) {
+        this.mappings = checkNotNull(mappings, "mappings");
+        this.classpath = classpath;
+        this.listener = checkNotNull(listener, "listener");
+    }
+
+    /**
+     * Remaps the ZIP file read from the specified stream in a single pass.
+     * Neither stream is closed.
+     *
+     * @param in The stream to read the ZIP file from
+     * @param out The stream to write the remapped ZIP file to
+     * @throws IOException If reading, remapping or writing fails
+     */
+    public void remap(InputStream in, OutputStream out) throws IOException {
+        ZipOutputStream zipOut = new ZipOutputStream(out);
+        Session session = new Session(zipOut);
+        session.run(new ZipInputStream(in), false);
+        session.complete();
+        zipOut.finish();
+    }
+
+    /**
+     * Remaps the ZIP file read from the specified source in two passes, the
+     * first one resolves the class hierarchy and the second one remaps the
+     * classes. The output stream is not closed.
+     *
+     * @param source The source to read the ZIP file from
+     * @param out The stream to write the remapped ZIP file to
+     * @throws IOException If reading, remapping or writing fails
+     */
+    public void remap(ByteSource source, OutputStream out) throws IOException {
+        ZipOutputStream zipOut = new ZipOutputStream(out);
+        Session session = new Session(zipOut);
+
+        Closer closer = Closer.create();
+        try {
+            session.run(new ZipInputStream(closer.register(source.openBufferedStream())), true);
+        } catch (Throwable e) {
+            throw closer.rethrow(e);
+        } finally {
+            closer.close();
+        }
+
+        session.complete();
+
+        closer = Closer.create();
+        try {
+            session.run(new ZipInputStream(closer.register(source.openBufferedStream())), false);
+        } catch (Throwable e) {
+            throw closer.rethrow(e);
+        } finally {
+            closer.close();
+        }
+
+        zipOut.finish();
+    }
+
+    private static boolean isClass(ZipEntry entry) {
+        return !entry.isDirectory() && entry.getName().endsWith(CLASS_EXTENSION);
+    }
+
+    private static void write(ZipOutputStream out, ZipEntry source, byte[] bytes) throws IOException {
+        ZipEntry entry = new ZipEntry(source.getName());
+        entry.setTime(source.getTime());
+        entry.setExtra(source.getExtra());
+        entry.setComment(source.getComment());
+        if (source.getMethod() == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(bytes.length);
+            entry.setCompressedSize(bytes.length);
+            entry.setCrc(crc.getValue());
+        }
+
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    // The state of remapping a single ZIP file
+    private final class Session implements ClassProvider, HierarchyProvider {
+
+        private final ZipOutputStream out;
+        private final Remapper remapper;
+
+        // The headers of all classes read so far and the classes loaded from the classpath
+        private final Map<String, ClassHeader> headers = Maps.newHashMap();
+        private final Set<String> missing = Sets.newHashSet();
+        private final Set<String> resolvable = Sets.newHashSet();
+        private boolean complete;
+
+        // The classes waiting for the class with the specified name
+        private final ListMultimap<String, Deferred> waiting = ArrayListMultimap.create();
+        private int count;
+
+        Session(ZipOutputStream out) {
+            this.out = out;
+            this.remapper = new Remapper(this, mappings, listener);
+        }
+
+        @Override
+        public ClassReader getClass(String name) throws IOException {
+            return classpath != null ? classpath.getClass(name) : null;
+        }
+
+        @Override
+        public ClassHeader getHeader(String name) throws IOException {
+            ClassHeader header = this.headers.get(name);
+            if (header == null && classpath != null && !this.missing.contains(name)) {
+                if (classpath instanceof HierarchyProvider) {
+                    header = ((HierarchyProvider) classpath).getHeader(name);
+                } else {
+                    ClassReader reader = classpath.getClass(name);
+                    if (reader != null) {
+                        header = new ClassHeader(name, reader.getSuperName(), Arrays.asList(reader.getInterfaces()));
+                    }
+                }
+
+                if (header != null) {
+                    this.headers.put(name, header);
+                } else {
+                    this.missing.add(name);
+                }
+            }
+
+            return header;
+        }
+
+        void run(ZipInputStream in, boolean headersOnly) throws IOException {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (headersOnly) {
+                    if (isClass(entry)) {
+                        addHeader(ClassHeader.read(new BufferedInputStream(in)));
+                    }
+                } else if (isClass(entry)) {
+                    ClassReader reader = new ClassReader(ByteStreams.toByteArray(in));
+                    String name = reader.getClassName();
+                    if (!this.complete) {
+                        addHeader(new ClassHeader(name, reader.getSuperName(), Arrays.asList(reader.getInterfaces())));
+                    }
+
+                    process(new Deferred(this.count++, entry, reader));
+                    if (!this.complete) {
+                        retry(name);
+                    }
+                } else {
+                    write(this.out, entry, ByteStreams.toByteArray(in));
+                }
+            }
+        }
+
+        private void addHeader(ClassHeader header) {
+            if (!this.headers.containsKey(header.getName())) {
+                this.headers.put(header.getName(), header);
+            }
+        }
+
+        // Marks all classes of the input as read, remaining classes are processed in their original order
+        void complete() throws IOException {
+            this.complete = true;
+
+            Collection<Deferred> remaining = this.waiting.values();
+            Deferred[] classes = remaining.toArray(new Deferred[remaining.size()]);
+            this.waiting.clear();
+
+            Arrays.sort(classes, Deferred.ORDER);
+            for (Deferred deferred : classes) {
+                process(deferred);
+            }
+        }
+
+        private void process(Deferred deferred) throws IOException {
+            ClassReader reader = deferred.reader;
+            if (this.remapper.isRemapRequired(reader)) {
+                String unresolved = findUnresolved(reader.getClassName());
+                if (unresolved == null) {
+                    for (String owner : this.remapper.getInvokedOwners(reader)) {
+                        unresolved = findUnresolved(owner);
+                        if (unresolved != null) {
+                            break;
+                        }
+                    }
+                }
+
+                if (unresolved != null) {
+                    this.waiting.put(unresolved, deferred);
+                    return;
+                }
+            }
+
+            write(this.out, deferred.entry, this.remapper.remap(reader));
+        }
+
+        private void retry(String name) throws IOException {
+            List<Deferred> classes = this.waiting.removeAll(name);
+            for (Deferred deferred : classes) {
+                process(deferred);
+            }
+        }
+
+        // Returns a class in the hierarchy of the specified class that wasn't read yet, or null if there is none
+        private String findUnresolved(String name) throws IOException {
+            if (this.complete) {
+                return null;
+            }
+
+            Set<String> visited = Sets.newHashSet();
+            String result = findUnresolved(name, visited);
+            if (result == null) {
+                this.resolvable.addAll(visited);
+            }
+
+            return result;
+        }
+
+        private String findUnresolved(String name, Set<String> visited) throws IOException {
+            if (name == null || this.resolvable.contains(name) || !visited.add(name)) {
+                return null;
+            }
+
+            // Classes with defined mappings don't inherit any other mappings
+            if (mappings.contains(name) || name.startsWith(JAVA_PACKAGE)) {
+                return null;
+            }
+
+            ClassHeader header = getHeader(name);
+            if (header == null) {
+                return name;
+            }
+
+            String result = findUnresolved(header.getSuperName(), visited);
+            for (String iface : header.getInterfaces()) {
+                if (result != null) {
+                    break;
+                }
+
+                result = findUnresolved(iface, visited);
+            }
+
+            return result;
+        }
+
+    }
+
+    private static final class Deferred {
+
+        static final Comparator<Deferred> ORDER = new Comparator<Deferred>() {
+
+            @Override
+            public int compare(Deferred o1, Deferred o2) {
+                return o1.index < o2.index ? -1 : (o1.index == o2.index ? 0 : 1);
+            }
+
+        };
+
+        private final int index;
+        private final ZipEntry entry;
+        private final ClassReader reader;
+
+        Deferred(int index, ZipEntry entry, ClassReader reader) {
+            this.index = index;
+            this.entry = entry;
+            this.reader = reader;
+        }
+
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Represents {@link Mappings} backed by an {@link ImmutableTable} with the
+ * owning class as row, the method name and descriptor as column and the new
+ * method name as value.
+ */
+public final class TableMappings implements Mappings {
+
+    private final ImmutableTable<String, String, String> table;
+    private final ImmutableSet<String> methodNames;
+
+    /**
+     * Creates new {@link TableMappings} for the specified table.
+     *
+     * @param table The table with the mappings
+     */
+    public TableMappings(ImmutableTable<String, String, String> table) {
+        this.table = checkNotNull(table, "table");
+
+        ImmutableSet.Builder<String> methodNames = ImmutableSet.builder();
+        for (String method : table.columnKeySet()) {
+            methodNames.add(getMethodName(method));
+        }
+        this.methodNames = methodNames.build();
+    }
+
+    static String getMethodName(String method) {
+        int pos = method.indexOf('(');
+        return pos >= 0 ? method.substring(0, pos) : method;
+    }
+
+    /**
+     * Gets the table with the mappings.
+     *
+     * @return The table
+     */
+    public ImmutableTable<String, String, String> getTable() {
+        return this.table;
+    }
+
+    @Override
+    public boolean contains(String owner) {
+        return this.table.containsRow(owner);
+    }
+
+    @Override
+    public Map<String, String> get(String owner) {
+        return this.table.containsRow(owner) ? this.table.row(owner) : null;
+    }
+
+    @Override
+    public Set<String> getOwners() {
+        return this.table.rowKeySet();
+    }
+
+    @Override
+    public boolean hasMappingsWithPrefix(String prefix) {
+        for (String owner : this.table.rowKeySet()) {
+            if (owner.startsWith(prefix)) {
+                return true; // Rows of a table can't be empty
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public Set<String> getMethodNames() {
+        return this.methodNames;
+    }
+
+}
@@ -0,0 +1,498 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.UnmodifiableIterator;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Represents {@link Mappings} in the text format of {@link RemapperConfig},
+ * indexed without decoding the mappings themselves.
+ *
+ * <p>Loading the mappings only records the position of each mapping in the
+ * raw UTF-8 data and sorts them by owner and method. The owners are looked up
+ * using a binary search on the raw data, and the mappings of a class are only
+ * decoded once they are requested. Compared to an
+ * {@link com.google.common.collect.ImmutableTable},
+ * this needs only the raw data and two {@code int} arrays in memory.</p>
+ */
+public final class TextMappings implements Mappings {
+
+    private static final byte SEPARATOR = ' ';
+    private static final byte COMMENT = '#';
+    private static final int END_OF_FIELD = -1;
+    private static final byte[] INCLUDE = "include ".getBytes(UTF_8);
+
+    private final byte[] data;
+    // The start of all valid lines, sorted by owner and method without duplicates
+    private final int[] lines;
+    // The index of the first line of each owner, followed by the total number of lines
+    private final int[] owners;
+
+    private final ImmutableSet<String> methodNames;
+    private final Set<String> ownerSet = new OwnerSet();
+
+    TextMappings(byte[] data, int[] lines) {
+        this.data = data;
+        this.lines = lines;
+
+        int ownerCount = 0;
+        int[] owners = new int[lines.length + 1];
+        ImmutableSet.Builder<String> methodNames = ImmutableSet.builder();
+        for (int i = 0; i < lines.length; i++) {
+            int line = lines[i];
+            if (i == 0 || compareLines(data, lines[i - 1], line, 1) != 0) {
+                owners[ownerCount++] = i;
+            }
+
+            int start = fieldStart(data, line, 1);
+            int end = fieldEnd(data, start);
+            for (int pos = start; pos < end; pos++) {
+                if (data[pos] == '(') {
+                    end = pos;
+                    break;
+                }
+            }
+            methodNames.add(new String(data, start, end - start, UTF_8));
+        }
+
+        owners[ownerCount] = lines.length;
+        this.owners = Arrays.copyOf(owners, ownerCount + 1);
+        this.methodNames = methodNames.build();
+    }
+
+    /**
+     * Loads the mappings from the specified raw UTF-8 data in the text format.
+     * The data must not be modified afterwards. Since the data has no
+     * location, {@code include} directives are not supported.
+     *
+     * @param data The data to load the mappings from
+     * @return The loaded mappings
+     * @throws IllegalArgumentException If a method is mapped to different
+     *         names
+     */
+    public static TextMappings load(byte[] data) {
+        checkNotNull(data, "data");
+        int[] lines = scan(data, 0, data.length, null);
+        sort(lines, data);
+
+        List<int[]> conflicts = Lists.newArrayList();
+        lines = removeDuplicates(data, lines, conflicts);
+        if (!conflicts.isEmpty()) {
+            int[] conflict = conflicts.get(0);
+            throw new IllegalArgumentException("Conflicting mappings: " + decodeLine(data, conflict[0]) + " and "
+                    + decodeLine(data, conflict[1]));
+        }
+
+        return new TextMappings(data, lines);
+    }
+
+    /**
+     * Loads the mappings from the specified {@link File} in the text format,
+     * including all files included by it.
+     *
+     * @param file The file to load the mappings from
+     * @return The loaded mappings
+     * @throws IOException If one of the files couldn't be read or if a method
+     *         is mapped to different names
+     * @see MappingsLoader
+     */
+    public static TextMappings load(File file) throws IOException {
+        return MappingsLoader.builder().add(file).build().load();
+    }
+
+    /**
+     * Loads the mappings from the specified {@link URL} (resource) in the text
+     * format, including all resources included by it.
+     *
+     * @param resource The resource to load the mappings from
+     * @return The loaded mappings
+     * @throws IOException If one of the resources couldn't be read or if a
+     *         method is mapped to different names
+     * @see MappingsLoader
+     */
+    public static TextMappings load(URL resource) throws IOException {
+        return MappingsLoader.builder().add(resource).build().load();
+    }
+
+    /**
+     * Finds the start of all valid mappings between the specified positions.
+     * Empty lines and comments are skipped, invalid lines are logged. The
+     * paths of {@code include} directives are added to the specified list, if
+     * it is {@code null} they are logged as invalid. Whitespace around the
+     * fields is ignored.
+     */
+    static int[] scan(byte[] data, int start, int end, List<String> includes) {
+        int[] lines = new int[64];
+        int count = 0;
+
+        int pos = start;
+        while (pos < end) {
+            int lineEnd = pos;
+            int separators = 0;
+            while (lineEnd < end && data[lineEnd] != '\n' && data[lineEnd] != '\r') {
+                if (data[lineEnd] == SEPARATOR) {
+                    separators++;
+                }
+                lineEnd++;
+            }
+
+            if (lineEnd > pos && data[pos] != COMMENT) {
+                if (separators == 2) {
+                    if (count == lines.length) {
+                        lines = Arrays.copyOf(lines, count * 2);
+                    }
+                    lines[count++] = fieldStart(data, pos, 0);
+                } else if (separators == 1 && includes != null && startsWith(data, pos, lineEnd, INCLUDE)) {
+                    int pathStart = fieldStart(data, pos, 1);
+                    includes.add(new String(data, pathStart, fieldEnd(data, pathStart) - pathStart, UTF_8));
+                } else {
+                    Remapper.logger.warn("Invalid mapping: {}", new String(data, pos, lineEnd - pos, UTF_8));
+                }
+            }
+
+            pos = lineEnd + 1;
+        }
+
+        return Arrays.copyOf(lines, count);
+    }
+
+    private static boolean startsWith(byte[] data, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Whitespace around the fields is trimmed, like Splitter.trimResults() did for the old line based loader
+    private static boolean isWhitespace(byte b) {
+        return b == '\t' || b == 0x0B || b == '\f';
+    }
+
+    // Returns the start of the field with the specified index (0 = owner, 1 = method, 2 = new name) after the position
+    private static int fieldStart(byte[] data, int pos, int field) {
+        for (; field > 0; pos++) {
+            if (data[pos] == SEPARATOR) {
+                field--;
+            }
+        }
+        while (pos < data.length && isWhitespace(data[pos])) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int fieldEnd(byte[] data, int start) {
+        int pos = start;
+        while (pos < data.length && data[pos] != SEPARATOR && data[pos] != '\n' && data[pos] != '\r') {
+            pos++;
+        }
+        while (pos > start && isWhitespace(data[pos - 1])) {
+            pos--;
+        }
+        return pos;
+    }
+
+    // Returns the unsigned byte at the position, or END_OF_FIELD if the field ends there
+    private static int fieldByte(byte[] data, int pos) {
+        if (pos >= data.length) {
+            return END_OF_FIELD;
+        }
+
+        byte b = data[pos];
+        if (b == SEPARATOR || b == '\n' || b == '\r' || (isWhitespace(b) && fieldEnd(data, pos) == pos)) {
+            return END_OF_FIELD;
+        }
+        return b & 0xFF;
+    }
+
+    // Compares the specified number of fields of two lines, the end of a field is sorted before all other characters
+    private static int compareLines(byte[] data, int line1, int line2, int fields) {
+        int pos1 = line1;
+        int pos2 = line2;
+        while (true) {
+            int b1 = fieldByte(data, pos1);
+            int b2 = fieldByte(data, pos2);
+            if (b1 != b2) {
+                return b1 - b2;
+            }
+
+            if (b1 != END_OF_FIELD) {
+                pos1++;
+                pos2++;
+            } else if (--fields == 0) {
+                return 0;
+            } else {
+                pos1 = fieldStart(data, pos1, 1);
+                pos2 = fieldStart(data, pos2, 1);
+            }
+        }
+    }
+
+    static int compareLines(byte[] data, int line1, int line2) {
+        return compareLines(data, line1, line2, 2); // Owner and method
+    }
+
+    /**
+     * Removes duplicate mappings from the sorted lines. Mappings of the same
+     * method to different names are added to the list of conflicts.
+     */
+    static int[] removeDuplicates(byte[] data, int[] lines, List<int[]> conflicts) {
+        int count = 0;
+        for (int i = 0; i < lines.length; i++) {
+            int line = lines[i];
+            if (count > 0 && compareLines(data, lines[count - 1], line) == 0) {
+                if (compareLines(data, lines[count - 1], line, 3) != 0) {
+                    conflicts.add(new int[]{lines[count - 1], line});
+                }
+            } else {
+                lines[count++] = line;
+            }
+        }
+
+        return count < lines.length ? Arrays.copyOf(lines, count) : lines;
+    }
+
+    /**
+     * Merges two arrays of sorted lines.
+     */
+    static int[] merge(byte[] data, int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        for (int i = 0, p = 0, q = 0; i < result.length; i++) {
+            if (q >= b.length || (p < a.length && compareLines(data, a[p], b[q]) <= 0)) {
+                result[i] = a[p++];
+            } else {
+                result[i] = b[q++];
+            }
+        }
+        return result;
+    }
+
+    // Merge sort on the line positions, avoids boxing them for a Comparator
+    static void sort(int[] lines, byte[] data) {
+        if (lines.length > 1) {
+            mergeSort(lines.clone(), lines, 0, lines.length, data);
+        }
+    }
+
+    private static void mergeSort(int[] src, int[] dest, int low, int high, byte[] data) {
+        if (high - low < 8) {
+            for (int i = low + 1; i < high; i++) {
+                for (int j = i; j > low && compareLines(data, dest[j - 1], dest[j]) > 0; j--) {
+                    int tmp = dest[j];
+                    dest[j] = dest[j - 1];
+                    dest[j - 1] = tmp;
+                }
+            }
+            return;
+        }
+
+        int mid = (low + high) >>> 1;
+        mergeSort(dest, src, low, mid, data);
+        mergeSort(dest, src, mid, high, data);
+
+        if (compareLines(data, src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, low, dest, low, high - low);
+            return;
+        }
+
+        for (int i = low, p = low, q = mid; i < high; i++) {
+            if (q >= high || (p < mid && compareLines(data, src[p], src[q]) <= 0)) {
+                dest[i] = src[p++];
+            } else {
+                dest[i] = src[q++];
+            }
+        }
+    }
+
+    static String decodeLine(byte[] data, int line) {
+        return new String(data, line, fieldEnd(data, fieldStart(data, line, 2)) - line, UTF_8);
+    }
+
+    private String decodeField(int line, int field) {
+        int start = fieldStart(this.data, line, field);
+        return new String(this.data, start, fieldEnd(this.data, start) - start, UTF_8);
+    }
+
+    // Returns the index of the owner, or a negative value if not found
+    private int findOwner(String owner) {
+        byte[] key = owner.getBytes(UTF_8);
+        int low = 0;
+        int high = this.owners.length - 2;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int result = compareOwner(key, this.lines[this.owners[mid]]);
+            if (result > 0) {
+                low = mid + 1;
+            } else if (result < 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+
+    private int compareOwner(byte[] key, int line) {
+        for (int i = 0; i < key.length; i++) {
+            int b = fieldByte(this.data, line + i);
+            if (b == END_OF_FIELD) {
+                return 1; // The owner is a prefix of the key
+            }
+
+            int result = (key[i] & 0xFF) - b;
+            if (result != 0) {
+                return result;
+            }
+        }
+
+        return fieldByte(this.data, line + key.length) == END_OF_FIELD ? 0 : -1;
+    }
+
+    // Returns the index of the first owner that is equal to or sorted after the key
+    private int findFirstOwner(byte[] key) {
+        int low = 0;
+        int high = this.owners.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareOwner(key, this.lines[this.owners[mid]]) > 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    @Override
+    public boolean contains(String owner) {
+        return findOwner(owner) >= 0;
+    }
+
+    @Override
+    public boolean hasMappingsWithPrefix(String prefix) {
+        byte[] key = prefix.getBytes(UTF_8);
+        int index = findFirstOwner(key);
+        if (index >= this.owners.length - 1) {
+            return false;
+        }
+
+        // Each line is a mapping, so all owners have mappings
+        int line = this.lines[this.owners[index]];
+        for (int i = 0; i < key.length; i++) {
+            if (this.data[line + i] != key[i]) {
+                return false; // Also stops at the end of the owner, the prefix can't contain a separator
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public Map<String, String> get(String owner) {
+        int index = findOwner(owner);
+        if (index < 0) {
+            return null;
+        }
+
+        ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+        for (int i = this.owners[index], end = this.owners[index + 1]; i < end; i++) {
+            builder.put(decodeField(this.lines[i], 1), decodeField(this.lines[i], 2));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Set<String> getOwners() {
+        return this.ownerSet;
+    }
+
+    @Override
+    public Set<String> getMethodNames() {
+        return this.methodNames;
+    }
+
+    // A view of the owners, decoded only while iterating over them
+    private final class OwnerSet extends AbstractSet<String> {
+
+        @Override
+        public Iterator<String> iterator() {
+            return new UnmodifiableIterator<String>() {
+
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return this.index < owners.length - 1;
+                }
+
+                @Override
+                public String next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    return decodeField(lines[owners[this.index++]], 0);
+                }
+
+            };
+        }
+
+        @Override
+        public int size() {
+            return owners.length - 1;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String && TextMappings.this.contains((String) o);
+        }
+
+    }
+
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.cli;
+
+import static blue.lapis.methodremapper.provider.ZipClassProvider.CLASS_EXTENSION;
+
+import blue.lapis.methodremapper.HierarchyResolver;
+import blue.lapis.methodremapper.JarRemapper;
+import blue.lapis.methodremapper.Mappings;
+import blue.lapis.methodremapper.Remapper;
+import blue.lapis.methodremapper.RemapperConfig;
+import blue.lapis.methodremapper.StreamingJarRemapper;
+import blue.lapis.methodremapper.metrics.RemapStatistics;
+import blue.lapis.methodremapper.provider.ClasspathProvider;
+import blue.lapis.methodremapper.provider.RawZipClassProvider;
+import blue.lapis.methodremapper.zip.RawZipEntry;
+import blue.lapis.methodremapper.zip.RawZipFile;
+import blue.lapis.methodremapper.zip.ZipWriter;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closer;
+import com.google.common.io.Files;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The command line interface to remap JAR files without Gradle.
+ *
+ * <p>All input JAR files are remapped in a single JVM: The mappings are
+ * loaded once, and all JAR files share the same {@link Remapper}, so the
+ * class hierarchy of classes used by multiple JAR files (e.g. libraries) is
+ * only resolved once. The input JAR files are added to the classpath in the
+ * specified order, followed by the additional classpath and the Java
+ * runtime. Multiple JAR files are remapped in parallel, sharing the threads
+ * used to remap the classes.</p>
+ *
+ * <p>The remapped JAR files are written to temporary files first, and only
+ * moved to the output directory once all JAR files were remapped. The output
+ * directory may therefore be the same as the directory of the input.</p>
+ *
+ * <p>Since all JAR files share the same class hierarchy, they shouldn't
+ * contain different versions of the same class. Classes that are shadowed by
+ * a previous JAR file are reported as warning.</p>
+ */
+public final class Main {
+
+    private static final String JAR_EXTENSION = ".jar";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final String STDIN = "-";
+
+    private static final Splitter PATH_SPLITTER = Splitter.on(File.pathSeparatorChar).omitEmptyStrings();
+
+    private static final String USAGE = "Usage: java -cp remapper.jar:guava.jar:asm.jar:slf4j-api.jar blue.lapis.methodremapper.cli.Main "
+            + "[options] <input>...\n"
+            + "\n"
+            + "The remapper needs Guava, ASM and SLF4J on the classpath.\n"
+            + "\n"
+            + "Inputs are JAR files or directories that are searched for JAR files recursively.\n"
+            + "Use - as only input to read a JAR file from stdin and write it to stdout.\n"
+            + "\n"
+            + "Options:\n"
+            + "  -m, --mappings <file>     The mappings to apply, in the text or binary format (required)\n"
+            + "  -o, --output <dir>        The directory to write the remapped JAR files to (required for files)\n"
+            + "  -cp, --classpath <path>   Additional libraries used to resolve the class hierarchy\n"
+            + "  -t, --threads <n>         The number of threads to use (default: number of processors)\n"
+            + "  --no-runtime              Don't resolve mappings inherited from classes of the Java runtime\n"
+            + "  -h, --help                Show this help";
+
+    private final PrintStream log;
+
+    private File mappings;
+    private File output;
+    private final List<File> classpath = Lists.newArrayList();
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean runtime = true;
+    private final List<String> inputs = Lists.newArrayList();
+
+    private Main(PrintStream log) {
+        this.log = log;
+    }
+
+    public static void main(String[] args) {
+        // Keep stdout free for the remapped JAR if reading from stdin
+        Main main = new Main(System.err);
+        try {
+            if (!main.parse(args)) {
+                System.err.println(USAGE);
+                System.exit(args.length == 0 ? 1 : 0);
+            }
+
+            main.run();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println();
+            System.err.println(USAGE);
+            System.exit(1);
+        } catch (Exception e) {
+            System.err.println("Failed to remap JAR files:");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private boolean parse(String[] args) {
+        if (args.length == 0) {
+            return false;
+        }
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-h") || arg.equals("--help")) {
+                return false;
+            } else if (arg.equals("-m") || arg.equals("--mappings")) {
+                this.mappings = new File(getValue(args, ++i, arg));
+            } else if (arg.equals("-o") || arg.equals("--output")) {
+                this.output = new File(getValue(args, ++i, arg));
+            } else if (arg.equals("-cp") || arg.equals("--classpath")) {
+                for (String path : PATH_SPLITTER.split(getValue(args, ++i, arg))) {
+                    this.classpath.add(new File(path));
+                }
+            } else if (arg.equals("-t") || arg.equals("--threads")) {
+                String value = getValue(args, ++i, arg);
+                try {
+                    this.threads = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid number of threads: " + value);
+                }
+                if (this.threads <= 0) {
+                    throw new IllegalArgumentException("The number of threads must be positive");
+                }
+            } else if (arg.equals("--no-runtime")) {
+                this.runtime = false;
+            } else if (arg.startsWith("-") && !arg.equals(STDIN)) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            } else {
+                this.inputs.add(arg);
+            }
+        }
+
+        if (this.mappings == null) {
+            throw new IllegalArgumentException("No mappings specified");
+        }
+        if (this.inputs.isEmpty()) {
+            throw new IllegalArgumentException("No input specified");
+        }
+        if (this.inputs.contains(STDIN)) {
+            if (this.inputs.size() > 1) {
+                throw new IllegalArgumentException("- can't be combined with other inputs");
+            }
+        } else if (this.output == null) {
+            throw new IllegalArgumentException("No output directory specified");
+        }
+
+        return true;
+    }
+
+    private static String getValue(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    private void run() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Mappings mappings = RemapperConfig.load(this.mappings);
+        this.log.printf(Locale.ENGLISH, "Loaded mappings for %d classes in %.2f s%n", mappings.getOwners().size(),
+                seconds(System.nanoTime() - start));
+
+        if (this.inputs.get(0).equals(STDIN)) {
+            remapStream(mappings);
+        } else {
+            remapFiles(mappings);
+        }
+    }
+
+    private void remapStream(Mappings mappings) throws IOException {
+        RemapStatistics statistics = new RemapStatistics();
+        ClasspathProvider provider = createClasspath(ClasspathProvider.builder()).build();
+        try {
+            long start = System.nanoTime();
+            OutputStream out = new BufferedOutputStream(System.out);
+            new StreamingJarRemapper(mappings, provider, statistics).remap(System.in, out);
+            out.flush();
+
+            this.log.printf(Locale.ENGLISH, "Remapped stdin in %.2f s%n", seconds(System.nanoTime() - start));
+            this.log.println(statistics);
+        } finally {
+            provider.close();
+        }
+    }
+
+    private void remapFiles(Mappings mappings) throws IOException, InterruptedException {
+        Map<File, File> files = findJars();
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No JAR files found in " + this.inputs);
+        }
+
+        long start = System.nanoTime();
+        RemapStatistics statistics = new RemapStatistics();
+        // Mapped files can't be replaced on Windows until the mapping is garbage collected
+        boolean map = !System.getProperty("os.name").startsWith("Windows");
+
+        int jobs = Math.min(this.threads, files.size());
+        ExecutorService executor = this.threads > 1 ? Executors.newFixedThreadPool(this.threads) : null;
+        ExecutorService jarExecutor = jobs > 1 ? Executors.newFixedThreadPool(jobs) : null;
+
+        List<Job> pending = Lists.newArrayListWithCapacity(files.size());
+        boolean success = false;
+        Closer closer = Closer.create();
+        try {
+            ClasspathProvider.Builder builder = ClasspathProvider.builder().threads(this.threads);
+            for (Map.Entry<File, File> entry : files.entrySet()) {
+                RawZipClassProvider zip = new RawZipClassProvider(closer.register(new RawZipFile(entry.getKey(), map)));
+                builder.add(zip);
+                pending.add(new Job(zip, entry.getValue()));
+            }
+
+            ClasspathProvider provider = closer.register(createClasspath(builder).build());
+            this.log.printf(Locale.ENGLISH, "Indexed classpath in %.2f s%n", seconds(System.nanoTime() - start));
+            for (Job job : pending) {
+                checkShadowed(provider, job.zip);
+            }
+
+            // Resolve the class hierarchy of all input classes up front, in parallel
+            long resolveStart = System.nanoTime();
+            Remapper shared = new Remapper(provider, mappings, statistics);
+            RawZipFile[] zips = new RawZipFile[pending.size()];
+            for (int i = 0; i < zips.length; i++) {
+                zips[i] = pending.get(i).zip.getZip();
+            }
+            int resolved = new HierarchyResolver(shared, executor, this.threads).resolve(zips);
+            this.log.printf(Locale.ENGLISH, "Resolved the hierarchy of %d classes in %.2f s%n", resolved,
+                    seconds(System.nanoTime() - resolveStart));
+
+            JarRemapper remapper = new JarRemapper(shared, executor, this.threads);
+            List<Future<?>> futures = Lists.newArrayListWithCapacity(pending.size());
+            for (Job job : pending) {
+                job.remapper = remapper;
+                if (jarExecutor != null) {
+                    futures.add(jarExecutor.submit(job));
+                } else {
+                    job.call();
+                }
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwables.propagateIfPossible(e.getCause(), IOException.class);
+                    throw Throwables.propagate(e.getCause());
+                }
+            }
+
+            success = true;
+        } catch (Throwable e) {
+            throw closer.rethrow(e, InterruptedException.class);
+        } finally {
+            if (jarExecutor != null) {
+                jarExecutor.shutdownNow();
+            }
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            closer.close();
+
+            if (!success) {
+                for (Job job : pending) {
+                    job.temp.delete();
+                }
+            }
+        }
+
+        // Replace the output files only after all input files were closed, they might be the same
+        long size = 0;
+        for (Job job : pending) {
+            Files.move(job.temp, job.output);
+            size += job.size;
+        }
+
+        long time = System.nanoTime() - start;
+        this.log.printf(Locale.ENGLISH, "Remapped %d JAR files (%.1f MB) in %.2f s (%.1f MB/s)%n", pending.size(),
+                megabytes(size), seconds(time), megabytes(size) / seconds(time));
+        this.log.println(statistics);
+    }
+
+    private void checkShadowed(ClasspathProvider provider, RawZipClassProvider zip) {
+        // All JAR files share the same class hierarchy, so classes that exist in multiple JAR files are only resolved once
+        int shadowed = 0;
+        for (RawZipEntry entry : zip.getZip().getEntries()) {
+            String name = entry.getName();
+            if (!entry.isDirectory() && name.endsWith(CLASS_EXTENSION)
+                    && provider.getSource(name.substring(0, name.length() - CLASS_EXTENSION.length())) != zip) {
+                shadowed++;
+            }
+        }
+
+        if (shadowed > 0) {
+            this.log.printf("Warning: %d classes in %s are shadowed by a previous JAR file or the classpath%n", shadowed,
+                    zip.getZip().getFile());
+        }
+    }
+
+    private ClasspathProvider.Builder createClasspath(ClasspathProvider.Builder builder) {
+        builder.addAll(this.classpath);
+        if (this.runtime) {
+            builder.addRuntime();
+        }
+        return builder;
+    }
+
+    private Map<File, File> findJars() {
+        // Keep the order of the inputs, it is the order of the classpath
+        Map<File, File> files = Maps.newLinkedHashMap();
+        Map<File, File> outputs = Maps.newHashMap();
+        for (String input : this.inputs) {
+            File file = new File(input);
+            if (file.isDirectory()) {
+                findJars(file, this.output, files, outputs);
+            } else if (file.isFile()) {
+                addJar(file, new File(this.output, file.getName()), files, outputs);
+            } else {
+                throw new IllegalArgumentException("Input doesn't exist: " + input);
+            }
+        }
+
+        return files;
+    }
+
+    private static void findJars(File dir, File output, Map<File, File> files, Map<File, File> outputs) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+
+        // Sort the files to make the order of the classpath deterministic
+        Arrays.sort(children);
+        for (File file : children) {
+            if (file.isDirectory()) {
+                findJars(file, new File(output, file.getName()), files, outputs);
+            } else if (file.getName().endsWith(JAR_EXTENSION)) {
+                addJar(file, new File(output, file.getName()), files, outputs);
+            }
+        }
+    }
+
+    private static void addJar(File input, File output, Map<File, File> files, Map<File, File> outputs) {
+        input = input.getAbsoluteFile();
+        output = output.getAbsoluteFile();
+        if (files.containsKey(input)) {
+            return;
+        }
+
+        File previous = outputs.put(output, input);
+        if (previous != null) {
+            throw new IllegalArgumentException("Both " + previous + " and " + input + " would be written to " + output);
+        }
+
+        files.put(input, output);
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private final class Job implements Callable<Void> {
+
+        private final RawZipClassProvider zip;
+        private final File output;
+        private final File temp;
+
+        private JarRemapper remapper;
+        private long size;
+
+        Job(RawZipClassProvider zip, File output) {
+            this.zip = zip;
+            this.output = output;
+            this.temp = new File(output.getPath() + TEMP_EXTENSION);
+        }
+
+        @Override
+        public Void call() throws IOException {
+            long start = System.nanoTime();
+            Files.createParentDirs(this.temp);
+            ZipWriter out = new ZipWriter(new FileOutputStream(this.temp));
+            try {
+                this.remapper.remap(this.zip.getZip(), out);
+            } finally {
+                out.close();
+            }
+
+            long time = System.nanoTime() - start;
+            RawZipFile zip = this.zip.getZip();
+            this.size = zip.getFile().length();
+            log.printf(Locale.ENGLISH, "Remapped %s (%d entries, %.1f MB) in %.2f s (%.1f MB/s)%n", zip.getFile().getName(),
+                    zip.getEntries().size(), megabytes(this.size), seconds(time), megabytes(this.size) / seconds(time));
+            return null;
+        }
+
+    }
+
+}
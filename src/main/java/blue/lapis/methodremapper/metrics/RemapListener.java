@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.metrics;
+
+import blue.lapis.methodremapper.Remapper;
+
+/**
+ * Receives the metrics recorded by a {@link Remapper} while remapping
+ * classes. Implementations are called from the hot path of the remapper,
+ * possibly from multiple threads at the same time, so they need to be
+ * thread-safe and should return as quickly as possible.
+ *
+ * @see RemapStatistics
+ */
+public interface RemapListener {
+
+    /**
+     * A {@link RemapListener} that ignores all metrics. The {@link Remapper}
+     * won't measure the time of the phases if this listener is used.
+     */
+    RemapListener NONE = new RemapListener() {
+
+        @Override
+        public void increment(Counter counter, long delta) {
+        }
+
+        @Override
+        public void record(Phase phase, long nanos) {
+        }
+
+    };
+
+    /**
+     * Increments the specified {@link Counter} by the specified amount.
+     *
+     * @param counter The counter to increment
+     * @param delta The amount to increment the counter by
+     */
+    void increment(Counter counter, long delta);
+
+    /**
+     * Records the time spent in the specified {@link Phase}.
+     *
+     * @param phase The phase
+     * @param nanos The time spent in the phase in nanoseconds
+     */
+    void record(Phase phase, long nanos);
+
+    /**
+     * Represents the events counted by the {@link Remapper}.
+     */
+    enum Counter {
+
+        /**
+         * A class was remapped.
+         */
+        CLASSES_REMAPPED,
+
+        /**
+         * A class was skipped because it doesn't need to be remapped.
+         */
+        CLASSES_SKIPPED,
+
+        /**
+         * A class was loaded from the class provider to resolve its mappings.
+         */
+        PROVIDER_LOADS,
+
+        /**
+         * The mappings of a class were already resolved (or are being
+         * resolved on another thread).
+         */
+        CACHE_HITS,
+
+        /**
+         * The mappings of a class had to be resolved.
+         */
+        CACHE_MISSES,
+
+        /**
+         * A method invocation was remapped.
+         */
+        INVOKES_REMAPPED,
+
+        /**
+         * A method declaration was remapped.
+         */
+        METHODS_REMAPPED
+
+    }
+
+    /**
+     * Represents the phases measured by the {@link Remapper}. Phases may be
+     * nested in each other, e.g. {@link #LOAD} for the super classes while
+     * resolving the mappings of a class. The time recorded for a phase
+     * excludes the time of the phases nested in it, so the times of all
+     * phases add up to the total time spent in the remapper.
+     */
+    enum Phase {
+
+        /**
+         * Scanning a class to check if it needs to be remapped.
+         */
+        SCAN,
+
+        /**
+         * Loading a class from the class provider.
+         */
+        LOAD,
+
+        /**
+         * Resolving the mappings of a class from its class hierarchy.
+         */
+        RESOLVE,
+
+        /**
+         * Rewriting the bytecode of a class.
+         */
+        REWRITE
+
+    }
+
+}
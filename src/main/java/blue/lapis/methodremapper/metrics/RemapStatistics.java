@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.metrics;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The default {@link RemapListener} implementation that sums up the counters
+ * and the time spent in each phase.
+ *
+ * <p>The values are stored in a single {@link AtomicLongArray}, with each
+ * value on its own cache line to avoid contention between threads updating
+ * different values.</p>
+ */
+public class RemapStatistics implements RemapListener {
+
+    // Distance between two values in the array, 8 longs = 64 bytes
+    private static final int PADDING = 8;
+
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final Phase[] PHASES = Phase.values();
+
+    private final AtomicLongArray values = new AtomicLongArray((COUNTERS.length + PHASES.length + 1) * PADDING);
+
+    private static int index(Counter counter) {
+        return (counter.ordinal() + 1) * PADDING;
+    }
+
+    private static int index(Phase phase) {
+        return (COUNTERS.length + phase.ordinal() + 1) * PADDING;
+    }
+
+    @Override
+    public void increment(Counter counter, long delta) {
+        this.values.getAndAdd(index(counter), delta);
+    }
+
+    @Override
+    public void record(Phase phase, long nanos) {
+        this.values.getAndAdd(index(phase), nanos);
+    }
+
+    /**
+     * Gets the current value of the specified {@link Counter}.
+     *
+     * @param counter The counter
+     * @return The current value of the counter
+     */
+    public long getCount(Counter counter) {
+        return this.values.get(index(checkNotNull(counter, "counter")));
+    }
+
+    /**
+     * Gets the total time spent in the specified {@link Phase}.
+     *
+     * @param phase The phase
+     * @param unit The time unit to return the time in
+     * @return The total time spent in the phase
+     */
+    public long getTime(Phase phase, TimeUnit unit) {
+        return unit.convert(this.values.get(index(checkNotNull(phase, "phase"))), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Resets all counters and times to zero.
+     */
+    public void reset() {
+        for (int i = 0; i < this.values.length(); i++) {
+            this.values.set(i, 0);
+        }
+    }
+
+    /**
+     * Returns a summary of the recorded metrics.
+     *
+     * @return The summary
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Counter counter : COUNTERS) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+
+            builder.append(format(counter.name())).append(": ").append(getCount(counter));
+        }
+
+        for (Phase phase : PHASES) {
+            builder.append(", ").append(format(phase.name())).append(" time: ")
+                    .append(getTime(phase, TimeUnit.MILLISECONDS)).append(" ms");
+        }
+
+        return builder.toString();
+    }
+
+    private static String format(String name) {
+        String result = name.toLowerCase(Locale.ENGLISH).replace('_', ' ');
+        return Character.toUpperCase(result.charAt(0)) + result.substring(1);
+    }
+
+}
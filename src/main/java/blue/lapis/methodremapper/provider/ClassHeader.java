@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.provider;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Represents the header of a class file, containing only the information
+ * needed to resolve the class hierarchy: the name of the class, its super
+ * class and its interfaces.
+ *
+ * <p>{@link #read(InputStream)} decodes the header directly from the class
+ * file, reading only the constant pool and the header. The fields, methods
+ * and attributes of the class aren't read at all.</p>
+ */
+public final class ClassHeader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    // Constant pool tags
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private final String name;
+    private final String superName;
+    private final ImmutableList<String> interfaces;
+
+    /**
+     * Creates a new {@link ClassHeader}.
+     *
+     * @param name The name of the class in internal format
+     * @param superName The name of the super class, or {@code null} if the
+     *        class doesn't have a super class (only for java/lang/Object)
+     * @param interfaces The names of the interfaces of the class
+     */
+    public ClassHeader(String name, String superName, List<String> interfaces) {
+        this.name = checkNotNull(name, "name");
+        this.superName = superName;
+        this.interfaces = ImmutableList.copyOf(interfaces);
+    }
+
+    /**
+     * Gets the name of the class in internal format, e.g. java/lang/Object.
+     *
+     * @return The name of the class
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the name of the super class in internal format.
+     *
+     * @return The name of the super class, or {@code null} if the class
+     *         doesn't have a super class
+     */
+    public String getSuperName() {
+        return this.superName;
+    }
+
+    /**
+     * Gets the names of the interfaces of the class in internal format.
+     *
+     * @return The names of the interfaces
+     */
+    public List<String> getInterfaces() {
+        return this.interfaces;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ClassHeader)) {
+            return false;
+        }
+
+        ClassHeader that = (ClassHeader) o;
+        return this.name.equals(that.name) && Objects.equal(this.superName, that.superName)
+                && this.interfaces.equals(that.interfaces);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ClassHeader{name=" + this.name + ", superName=" + this.superName + ", interfaces=" + this.interfaces + '}';
+    }
+
+    /**
+     * Reads the {@link ClassHeader} from the specified class file.
+     *
+     * @param bytes The bytes of the class file
+     * @return The header of the class
+     * @throws IOException If the class file is invalid
+     */
+    public static ClassHeader read(byte[] bytes) throws IOException {
+        return read(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Reads the {@link ClassHeader} from the specified class file stream.
+     * Only the constant pool and the header of the class are read from the
+     * stream, the remaining bytes are left unread. The stream is not closed.
+     *
+     * @param in The input stream to read the class file from
+     * @return The header of the class
+     * @throws IOException If the class file couldn't be read or is invalid
+     */
+    public static ClassHeader read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Invalid class file");
+        }
+
+        data.readInt(); // Version
+
+        // Collect the raw UTF-8 constants in a single buffer, only the class names are decoded later
+        int count = data.readUnsignedShort();
+        int[] offsets = new int[count];
+        int[] classes = new int[count];
+        byte[] pool = new byte[Math.max(count * 16, 64)];
+        int size = 0;
+
+        for (int i = 1; i < count; i++) {
+            int tag = data.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    int length = data.readUnsignedShort();
+                    if (size + length > pool.length) {
+                        pool = Arrays.copyOf(pool, Math.max(pool.length * 2, size + length));
+                    }
+
+                    data.readFully(pool, size, length);
+                    offsets[i] = size;
+                    classes[i] = -length - 1; // Remember the length of the string
+                    size += length;
+                    break;
+                case CONSTANT_CLASS:
+                    classes[i] = data.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    data.readUnsignedShort();
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    data.readUnsignedByte();
+                    data.readUnsignedShort();
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    data.readInt();
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    data.readLong();
+                    i++; // Takes two slots in the constant pool
+                    break;
+                default:
+                    throw new IOException("Invalid constant pool tag " + tag);
+            }
+        }
+
+        data.readUnsignedShort(); // Access
+        String name = readClass(data.readUnsignedShort(), offsets, classes, pool);
+        if (name == null) {
+            throw new IOException("Missing class name");
+        }
+
+        String superName = readClass(data.readUnsignedShort(), offsets, classes, pool);
+
+        String[] interfaces = new String[data.readUnsignedShort()];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = readClass(data.readUnsignedShort(), offsets, classes, pool);
+            if (interfaces[i] == null) {
+                throw new IOException("Invalid interface in " + name);
+            }
+        }
+
+        return new ClassHeader(name, superName, Arrays.asList(interfaces));
+    }
+
+    private static String readClass(int index, int[] offsets, int[] classes, byte[] pool) throws IOException {
+        if (index == 0) {
+            return null;
+        }
+
+        if (index >= classes.length || classes[index] <= 0) {
+            throw new IOException("Invalid class constant " + index);
+        }
+
+        int utf8 = classes[index];
+        if (utf8 >= classes.length || classes[utf8] >= 0) {
+            throw new IOException("Invalid UTF-8 constant " + utf8);
+        }
+
+        return decode(pool, offsets[utf8], -classes[utf8] - 1);
+    }
+
+    // Decodes a modified UTF-8 string (as used in class files)
+    private static String decode(byte[] pool, int offset, int length) throws UTFDataFormatException {
+        char[] chars = new char[length];
+        int count = 0;
+        int end = offset + length;
+        while (offset < end) {
+            int c = pool[offset++] & 0xFF;
+            if (c < 0x80) {
+                chars[count++] = (char) c;
+            } else if ((c & 0xE0) == 0xC0 && offset < end) {
+                chars[count++] = (char) (((c & 0x1F) << 6) | (pool[offset++] & 0x3F));
+            } else if ((c & 0xF0) == 0xE0 && offset + 1 < end) {
+                chars[count++] = (char) (((c & 0x0F) << 12) | ((pool[offset++] & 0x3F) << 6) | (pool[offset++] & 0x3F));
+            } else {
+                throw new UTFDataFormatException("Invalid modified UTF-8 string");
+            }
+        }
+
+        return new String(chars, 0, count);
+    }
+
+}
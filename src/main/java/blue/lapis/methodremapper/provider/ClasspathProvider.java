@@ -0,0 +1,521 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.provider;
+
+import static blue.lapis.methodremapper.provider.ZipClassProvider.CLASS_EXTENSION;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import blue.lapis.methodremapper.zip.RawZipEntry;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closer;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.objectweb.asm.ClassReader;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Represents a {@link ClassProvider} for a complete classpath, consisting out
+ * of JAR files, directories and optionally the Java runtime the remapper is
+ * running on.
+ *
+ * <p>When the provider is built, the classes in all JAR files and directories
+ * are indexed in parallel, so each class lookup goes directly to the JAR or
+ * directory containing the class. If a class exists in multiple entries of
+ * the classpath, the first one is used. Classes that aren't found on the
+ * classpath are looked up in the parent provider (if set), and then in the
+ * Java runtime, which is not indexed either. Classes that don't exist in the
+ * runtime are remembered, so they are only looked up once.</p>
+ *
+ * <p>This provider is thread-safe.</p>
+ */
+public class ClasspathProvider implements ClassProvider, HierarchyProvider, Closeable {
+
+    private final Map<String, ClassProvider> index;
+    private final ClassProvider parent;
+    private final RuntimeProvider runtime;
+    private final Set<String> missing = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Closer closer;
+
+    private ClasspathProvider(Map<String, ClassProvider> index, ClassProvider parent, RuntimeProvider runtime, Closer closer) {
+        this.index = index;
+        this.parent = parent;
+        this.runtime = runtime;
+        this.closer = closer;
+    }
+
+    /**
+     * Gets the {@link ClassProvider} of the classpath entry containing the
+     * class with the specified name.
+     *
+     * @param name The name of the class in internal format, e.g.
+     *        java/lang/Object
+     * @return The provider containing the class, or {@code null} if not found
+     *         or if it is provided by a parent provider that isn't a
+     *         {@link ClasspathProvider}
+     */
+    public ClassProvider getSource(String name) {
+        ClassProvider source = this.index.get(name);
+        if (source == null && this.parent instanceof ClasspathProvider) {
+            source = ((ClasspathProvider) this.parent).getSource(name);
+        }
+
+        if (source == null && this.runtime != null && !this.missing.contains(name)) {
+            if (this.runtime.contains(name)) {
+                return this.runtime;
+            }
+
+            this.missing.add(name);
+        }
+
+        return source;
+    }
+
+    @Override
+    public ClassReader getClass(String name) throws IOException {
+        ClassProvider source = this.index.get(name);
+        if (source != null) {
+            return source.getClass(name);
+        }
+
+        if (this.parent != null) {
+            ClassReader reader = this.parent.getClass(name);
+            if (reader != null) {
+                return reader;
+            }
+        }
+
+        if (this.runtime != null && !this.missing.contains(name)) {
+            ClassReader reader = this.runtime.getClass(name);
+            if (reader == null) {
+                this.missing.add(name);
+            }
+
+            return reader;
+        }
+
+        return null;
+    }
+
+    @Override
+    public ClassHeader getHeader(String name) throws IOException {
+        ClassProvider source = this.index.get(name);
+        if (source != null) {
+            return ((HierarchyProvider) source).getHeader(name);
+        }
+
+        if (this.parent != null) {
+            ClassHeader header = getParentHeader(name);
+            if (header != null) {
+                return header;
+            }
+        }
+
+        if (this.runtime != null && !this.missing.contains(name)) {
+            ClassHeader header = this.runtime.getHeader(name);
+            if (header == null) {
+                this.missing.add(name);
+            }
+
+            return header;
+        }
+
+        return null;
+    }
+
+    private ClassHeader getParentHeader(String name) throws IOException {
+        if (this.parent instanceof HierarchyProvider) {
+            return ((HierarchyProvider) this.parent).getHeader(name);
+        }
+
+        ClassReader reader = this.parent.getClass(name);
+        if (reader == null) {
+            return null;
+        }
+
+        String[] interfaces = reader.getInterfaces();
+        return new ClassHeader(name, reader.getSuperName(),
+                interfaces != null ? Arrays.asList(interfaces) : ImmutableList.<String>of());
+    }
+
+    /**
+     * Closes all JAR files opened by this {@link ClasspathProvider}. Providers
+     * added using {@link Builder#add(RawZipClassProvider)} and the parent
+     * provider are not closed.
+     *
+     * @throws IOException If closing one of the JAR files fails
+     */
+    @Override
+    public void close() throws IOException {
+        this.closer.close();
+    }
+
+    /**
+     * Creates a new {@link Builder} for a {@link ClasspathProvider}.
+     *
+     * @return The new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A builder for {@link ClasspathProvider}s.
+     */
+    public static final class Builder {
+
+        private final List<Callable<Source>> sources = Lists.newArrayList();
+        private ClassProvider parent;
+        private boolean runtime;
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a JAR file or a directory to the classpath. Files that don't
+         * exist are ignored.
+         *
+         * @param file The JAR file or directory to add
+         * @return This builder
+         */
+        public Builder add(final File file) {
+            checkNotNull(file, "file");
+            this.sources.add(new Callable<Source>() {
+
+                @Override
+                public Source call() throws IOException {
+                    if (file.isDirectory()) {
+                        DirectoryClassProvider provider = new DirectoryClassProvider(file);
+                        return new Source(provider, provider.getClassNames(), null);
+                    } else if (file.isFile()) {
+                        ZipFile zip = new ZipFile(file);
+                        ImmutableList.Builder<String> names = ImmutableList.builder();
+                        for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements(); ) {
+                            ZipEntry entry = entries.nextElement();
+                            if (!entry.isDirectory()) {
+                                addClassName(names, entry.getName());
+                            }
+                        }
+
+                        return new Source(new ZipClassProvider(zip), names.build(), zip);
+                    } else {
+                        return null;
+                    }
+                }
+
+            });
+            return this;
+        }
+
+        /**
+         * Adds all specified JAR files and directories to the classpath.
+         *
+         * @param files The JAR files and directories to add
+         * @return This builder
+         * @see #add(File)
+         */
+        public Builder addAll(Iterable<File> files) {
+            for (File file : files) {
+                add(file);
+            }
+            return this;
+        }
+
+        /**
+         * Adds the JAR file of the specified {@link RawZipClassProvider} to
+         * the classpath. The provider won't be closed by the
+         * {@link ClasspathProvider}.
+         *
+         * @param provider The provider to add
+         * @return This builder
+         */
+        public Builder add(final RawZipClassProvider provider) {
+            checkNotNull(provider, "provider");
+            this.sources.add(new Callable<Source>() {
+
+                @Override
+                public Source call() {
+                    ImmutableList.Builder<String> names = ImmutableList.builder();
+                    for (RawZipEntry entry : provider.getZip().getEntries()) {
+                        if (!entry.isDirectory()) {
+                            addClassName(names, entry.getName());
+                        }
+                    }
+
+                    return new Source(provider, names.build(), null);
+                }
+
+            });
+            return this;
+        }
+
+        /**
+         * Adds a custom provider for the specified classes to the classpath,
+         * e.g. a provider with a previously built index of the classes in a
+         * JAR file.
+         *
+         * @param provider The provider to add
+         * @param names The names of all classes of the provider in internal
+         *        format
+         * @param <T> The type of the provider
+         * @return This builder
+         */
+        public <T extends ClassProvider & HierarchyProvider> Builder add(final T provider, Iterable<String> names) {
+            checkNotNull(provider, "provider");
+            final ImmutableList<String> copy = ImmutableList.copyOf(names);
+            this.sources.add(new Callable<Source>() {
+
+                @Override
+                public Source call() {
+                    return new Source(provider, copy, null);
+                }
+
+            });
+            return this;
+        }
+
+        /**
+         * Sets the parent provider, which is used to look up classes that
+         * aren't found on the classpath, before looking them up in the Java
+         * runtime. This can be used to put a JAR file in front of an existing
+         * provider. The parent won't be closed by the
+         * {@link ClasspathProvider}.
+         *
+         * @param parent The parent provider
+         * @return This builder
+         */
+        public Builder parent(ClassProvider parent) {
+            this.parent = checkNotNull(parent, "parent");
+            return this;
+        }
+
+        /**
+         * Adds the classes of the Java runtime the remapper is running on to
+         * the end of the classpath.
+         *
+         * @return This builder
+         */
+        public Builder addRuntime() {
+            this.runtime = true;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads used to index the classpath. By default,
+         * the number of available processors is used.
+         *
+         * @param threads The number of threads, 1 to index the classpath
+         *        sequentially
+         * @return This builder
+         */
+        public Builder threads(int threads) {
+            checkArgument(threads > 0, "threads must be positive");
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Indexes the classpath and builds the {@link ClasspathProvider}.
+         *
+         * @return The classpath provider
+         * @throws IOException If one of the JAR files couldn't be read
+         */
+        public ClasspathProvider build() throws IOException {
+            int threads = Math.min(this.threads, this.sources.size());
+            ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+
+            List<Future<Source>> futures = Lists.newArrayListWithCapacity(this.sources.size());
+            try {
+                for (Callable<Source> source : this.sources) {
+                    if (executor != null) {
+                        futures.add(executor.submit(source));
+                    } else {
+                        try {
+                            futures.add(Futures.immediateFuture(source.call()));
+                        } catch (Exception e) {
+                            futures.add(Futures.<Source>immediateFailedFuture(e));
+                        }
+                    }
+                }
+            } finally {
+                if (executor != null) {
+                    executor.shutdown();
+                }
+            }
+
+            // Wait for all sources, so all opened JAR files can be closed if one of them fails
+            Closer closer = Closer.create();
+            List<Source> sources = Lists.newArrayListWithCapacity(futures.size());
+            Throwable failure = null;
+            for (Future<Source> future : futures) {
+                try {
+                    Source source = Uninterruptibles.getUninterruptibly(future);
+                    if (source != null) {
+                        closer.register(source);
+                        sources.add(source);
+                    }
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+
+            if (failure != null) {
+                closer.close();
+                Throwables.propagateIfPossible(failure, IOException.class);
+                throw Throwables.propagate(failure);
+            }
+
+            int size = 0;
+            for (Source source : sources) {
+                size += source.names.size();
+            }
+
+            Map<String, ClassProvider> index = Maps.newHashMapWithExpectedSize(size);
+            for (Source source : sources) {
+                for (String name : source.names) {
+                    if (!index.containsKey(name)) {
+                        index.put(name, source.provider);
+                    }
+                }
+            }
+
+            return new ClasspathProvider(index, this.parent, this.runtime ? new RuntimeProvider() : null, closer);
+        }
+
+        private static void addClassName(ImmutableList.Builder<String> names, String file) {
+            if (file.endsWith(CLASS_EXTENSION)) {
+                names.add(file.substring(0, file.length() - CLASS_EXTENSION.length()));
+            }
+        }
+
+    }
+
+    private static final class Source implements Closeable {
+
+        private final ClassProvider provider;
+        private final List<String> names;
+        private final Closeable closeable;
+
+        Source(ClassProvider provider, List<String> names, Closeable closeable) {
+            this.provider = provider;
+            this.names = names;
+            this.closeable = closeable;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.closeable != null) {
+                this.closeable.close();
+            }
+        }
+
+    }
+
+    private static final class RuntimeProvider implements ClassProvider, HierarchyProvider {
+
+        private final ClassLoader loader = getRuntimeClassLoader();
+
+        private static ClassLoader getRuntimeClassLoader() {
+            try {
+                // Java 9+: The platform class loader can load all classes of the runtime image
+                return (ClassLoader) ClassLoader.class.getMethod("getPlatformClassLoader").invoke(null);
+            } catch (NoSuchMethodException e) {
+                // Only use the bootstrap class loader
+                return new URLClassLoader(new URL[0], null);
+            } catch (IllegalAccessException e) {
+                throw Throwables.propagate(e);
+            } catch (InvocationTargetException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+
+        boolean contains(String name) {
+            return this.loader.getResource(name + CLASS_EXTENSION) != null;
+        }
+
+        private InputStream open(String name) {
+            InputStream in = this.loader.getResourceAsStream(name + CLASS_EXTENSION);
+            return in != null ? new BufferedInputStream(in) : null;
+        }
+
+        @Override
+        public ClassReader getClass(String name) throws IOException {
+            InputStream in = open(name);
+            if (in == null) {
+                return null;
+            }
+
+            try {
+                return new ClassReader(in);
+            } finally {
+                in.close();
+            }
+        }
+
+        @Override
+        public ClassHeader getHeader(String name) throws IOException {
+            InputStream in = open(name);
+            if (in == null) {
+                return null;
+            }
+
+            try {
+                return ClassHeader.read(in);
+            } finally {
+                in.close();
+            }
+        }
+
+    }
+
+}
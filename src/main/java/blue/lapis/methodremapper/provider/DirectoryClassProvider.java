@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.provider;
+
+import static blue.lapis.methodremapper.provider.ZipClassProvider.CLASS_EXTENSION;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import org.objectweb.asm.ClassReader;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Represents a {@link ClassProvider} backed by a directory containing
+ * exploded class files, e.g. the output directory of the compiler.
+ */
+public class DirectoryClassProvider implements ClassProvider, HierarchyProvider {
+
+    private final File directory;
+
+    /**
+     * Creates a new {@link DirectoryClassProvider} for the specified
+     * directory.
+     *
+     * @param directory The directory to load the classes from
+     */
+    public DirectoryClassProvider(File directory) {
+        this.directory = checkNotNull(directory, "directory");
+    }
+
+    /**
+     * Gets the directory of this {@link DirectoryClassProvider}.
+     *
+     * @return The directory
+     */
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    private InputStream open(String name) throws IOException {
+        try {
+            return new BufferedInputStream(new FileInputStream(new File(this.directory, name + CLASS_EXTENSION)));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public ClassReader getClass(String name) throws IOException {
+        InputStream in = open(name);
+        if (in == null) {
+            return null;
+        }
+
+        try {
+            return new ClassReader(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public ClassHeader getHeader(String name) throws IOException {
+        InputStream in = open(name);
+        if (in == null) {
+            return null;
+        }
+
+        try {
+            return ClassHeader.read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Lists the names of all classes in the directory.
+     *
+     * @return The names of all classes in internal format
+     */
+    public List<String> getClassNames() {
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        collectClassNames(this.directory, "", builder);
+        return builder.build();
+    }
+
+    private static void collectClassNames(File directory, String prefix, ImmutableList.Builder<String> builder) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                collectClassNames(file, prefix + name + '/', builder);
+            } else if (name.endsWith(CLASS_EXTENSION)) {
+                builder.add(prefix + name.substring(0, name.length() - CLASS_EXTENSION.length()));
+            }
+        }
+    }
+
+}
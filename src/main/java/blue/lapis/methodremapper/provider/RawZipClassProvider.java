@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.provider;
+
+import static blue.lapis.methodremapper.provider.ZipClassProvider.CLASS_EXTENSION;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import blue.lapis.methodremapper.zip.RawZipEntry;
+import blue.lapis.methodremapper.zip.RawZipFile;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Represents a {@link ClassProvider} backed by a {@link RawZipFile}. The
+ * entries are looked up in the central directory index of the ZIP file and
+ * the decompressed class bytes are kept in a bounded LRU cache, so classes
+ * that are requested multiple times (e.g. super classes while resolving the
+ * class hierarchy) are decompressed only once.
+ *
+ * <p>Class headers are read from the cached class bytes as well. Since the
+ * classes of the ZIP file are usually remapped too, decompressing only the
+ * header would mean decompressing the beginning of the class twice.</p>
+ *
+ * <p>This provider is thread-safe. Concurrent requests for the same class
+ * will decompress it only once.</p>
+ */
+public class RawZipClassProvider implements ClassProvider, HierarchyProvider {
+
+    /**
+     * The default maximum size of the cached class bytes, in bytes.
+     */
+    public static final long DEFAULT_CACHE_SIZE = 64 * 1024 * 1024;
+
+    private final RawZipFile zip;
+    private final LoadingCache<RawZipEntry, byte[]> cache;
+
+    /**
+     * Creates a new {@link RawZipClassProvider} for the specified
+     * {@link RawZipFile} using the {@link #DEFAULT_CACHE_SIZE}.
+     *
+     * @param zip The zip file to load the classes from
+     */
+    public RawZipClassProvider(RawZipFile zip) {
+        this(zip, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a new {@link RawZipClassProvider} for the specified
+     * {@link RawZipFile}.
+     *
+     * @param zip The zip file to load the classes from
+     * @param cacheSize The maximum size of the cached class bytes, in bytes
+     */
+    public RawZipClassProvider(final RawZipFile zip, long cacheSize) {
+        checkArgument(cacheSize >= 0, "cacheSize cannot be negative");
+        this.zip = checkNotNull(zip, "zip");
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(cacheSize)
+                .weigher(new Weigher<RawZipEntry, byte[]>() {
+
+                    @Override
+                    public int weigh(RawZipEntry key, byte[] value) {
+                        return value.length;
+                    }
+
+                })
+                .build(new CacheLoader<RawZipEntry, byte[]>() {
+
+                    @Override
+                    public byte[] load(RawZipEntry key) throws IOException {
+                        return zip.getBytes(key);
+                    }
+
+                });
+    }
+
+    /**
+     * Gets the {@link RawZipFile} of this {@link RawZipClassProvider}.
+     *
+     * @return The zip file
+     */
+    public RawZipFile getZip() {
+        return this.zip;
+    }
+
+    @Override
+    public ClassReader getClass(String name) throws IOException {
+        RawZipEntry entry = this.zip.getEntry(name + CLASS_EXTENSION);
+        return entry != null ? new ClassReader(getBytes(entry)) : null;
+    }
+
+    @Override
+    public ClassHeader getHeader(String name) throws IOException {
+        RawZipEntry entry = this.zip.getEntry(name + CLASS_EXTENSION);
+        return entry != null ? ClassHeader.read(getBytes(entry)) : null;
+    }
+
+    /**
+     * Gets the decompressed bytes of the specified entry, either from the
+     * cache or by decompressing it from the zip file. The returned array is
+     * shared with the cache and must not be modified.
+     *
+     * @param entry The entry to get the bytes for
+     * @return The decompressed bytes of the entry
+     * @throws IOException If the entry couldn't be read
+     */
+    public byte[] getBytes(RawZipEntry entry) throws IOException {
+        try {
+            return this.cache.get(checkNotNull(entry, "entry"));
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+}
@@ -27,6 +27,7 @@
 
 import org.objectweb.asm.ClassReader;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.zip.ZipEntry;
@@ -34,9 +35,10 @@
 
 /**
  * Represents a standard {@link ClassProvider} backed by a simple Java ZIP or
- * JAR file.
+ * JAR file. Class headers are read by decompressing only the beginning of the
+ * class file.
  */
-public class ZipClassProvider implements ClassProvider {
+public class ZipClassProvider implements ClassProvider, HierarchyProvider {
 
     /**
      * The file extension used for Java classes.
@@ -59,6 +61,21 @@ public ClassReader getClass(String name) throws IOException {
         return getClassFile(name + CLASS_EXTENSION);
     }
 
+    @Override
+    public ClassHeader getHeader(String name) throws IOException {
+        ZipEntry entry = this.zip.getEntry(name + CLASS_EXTENSION);
+        if (entry == null) {
+            return null;
+        }
+
+        InputStream in = new BufferedInputStream(this.zip.getInputStream(entry));
+        try {
+            return ClassHeader.read(in);
+        } finally {
+            in.close();
+        }
+    }
+
     /**
      * Loads a class from the specified class file path.
      *
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.zip;
+
+/**
+ * Represents an entry in a {@link RawZipFile} or a {@link ZipWriter}. It
+ * keeps the header fields exactly as they were read, so the entry can be
+ * written again without any changes.
+ */
+public final class RawZipEntry {
+
+    /**
+     * Compression method for uncompressed entries.
+     */
+    public static final int STORED = 0;
+
+    /**
+     * Compression method for compressed (deflated) entries.
+     */
+    public static final int DEFLATED = 8;
+
+    static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+
+    private final String name;
+    final byte[] nameBytes;
+
+    final int versionMadeBy;
+    final int versionNeeded;
+    final int flags;
+    final int method;
+    final int time;
+    final int date;
+    final long crc;
+    final long compressedSize;
+    final long size;
+
+    final byte[] extra;
+    final byte[] comment;
+    final int internalAttributes;
+    final long externalAttributes;
+
+    final long offset;
+
+    // Lazily read from the local file header
+    volatile long dataOffset = -1;
+    volatile byte[] localExtra;
+
+    RawZipEntry(String name, byte[] nameBytes, int versionMadeBy, int versionNeeded, int flags, int method, int time, int date,
+            long crc, long compressedSize, long size, byte[] extra, byte[] comment, int internalAttributes, long externalAttributes,
+            long offset) {
+        this.name = name;
+        this.nameBytes = nameBytes;
+        this.versionMadeBy = versionMadeBy;
+        this.versionNeeded = versionNeeded;
+        this.flags = flags;
+        this.method = method;
+        this.time = time;
+        this.date = date;
+        this.crc = crc;
+        this.compressedSize = compressedSize;
+        this.size = size;
+        this.extra = extra;
+        this.comment = comment;
+        this.internalAttributes = internalAttributes;
+        this.externalAttributes = externalAttributes;
+        this.offset = offset;
+    }
+
+    RawZipEntry(RawZipEntry template, int method, long crc, long compressedSize, long size) {
+        this(template.name, template.nameBytes, template.versionMadeBy,
+                Math.max(template.versionNeeded, method == DEFLATED ? 20 : 10), template.flags & ~FLAG_DATA_DESCRIPTOR, method,
+                template.time, template.date, crc, compressedSize, size, template.extra, template.comment, template.internalAttributes,
+                template.externalAttributes, -1);
+        this.localExtra = template.localExtra;
+    }
+
+    /**
+     * Gets the name of this entry.
+     *
+     * @return The name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns whether this entry is a directory.
+     *
+     * @return {@code true} if this entry is a directory
+     */
+    public boolean isDirectory() {
+        return this.name.endsWith("/");
+    }
+
+    /**
+     * Gets the compression method of this entry, either {@link #STORED} or
+     * {@link #DEFLATED}.
+     *
+     * @return The compression method
+     */
+    public int getMethod() {
+        return this.method;
+    }
+
+    /**
+     * Gets the CRC-32 checksum of the uncompressed data of this entry.
+     *
+     * @return The CRC-32 checksum
+     */
+    public long getCrc() {
+        return this.crc;
+    }
+
+    /**
+     * Gets the size of the compressed data of this entry.
+     *
+     * @return The compressed size
+     */
+    public long getCompressedSize() {
+        return this.compressedSize;
+    }
+
+    /**
+     * Gets the size of the uncompressed data of this entry.
+     *
+     * @return The uncompressed size
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+
+}
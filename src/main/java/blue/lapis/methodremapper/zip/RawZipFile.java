@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.zip;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Represents a ZIP or JAR file that provides access to the raw (compressed)
+ * data of its entries. This allows copying entries to a {@link ZipWriter}
+ * without decompressing and compressing them again.
+ *
+ * <p>Optionally, the ZIP file can be memory-mapped, so reading the headers
+ * and entries doesn't need a system call for every read. Note that the file
+ * stays mapped until the mapping is garbage collected, which prevents
+ * deleting or replacing it on some platforms (e.g. Windows).</p>
+ *
+ * <p>All methods are safe to be used from multiple threads. ZIP64 archives
+ * are not supported.</p>
+ */
+public class RawZipFile implements Closeable {
+
+    static final int LOCAL_HEADER = 0x04034b50;
+    static final int CENTRAL_HEADER = 0x02014b50;
+    static final int END_HEADER = 0x06054b50;
+
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final int CENTRAL_HEADER_SIZE = 46;
+    static final int END_HEADER_SIZE = 22;
+
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private final File file;
+    private final FileInputStream in;
+    private final FileChannel channel;
+    private final ByteBuffer mapped;
+
+    private final ImmutableList<RawZipEntry> entries;
+    private final ImmutableMap<String, RawZipEntry> entriesByName;
+
+    /**
+     * Opens the specified ZIP file and reads its central directory.
+     *
+     * @param file The ZIP file to open
+     * @throws IOException If the file couldn't be read or isn't a valid ZIP
+     *         file
+     */
+    public RawZipFile(File file) throws IOException {
+        this(file, false);
+    }
+
+    /**
+     * Opens the specified ZIP file and reads its central directory.
+     *
+     * @param file The ZIP file to open
+     * @param map Whether the ZIP file should be memory-mapped
+     * @throws IOException If the file couldn't be read or isn't a valid ZIP
+     *         file
+     */
+    public RawZipFile(File file, boolean map) throws IOException {
+        this.file = checkNotNull(file, "file");
+        this.in = new FileInputStream(file);
+        this.channel = this.in.getChannel();
+
+        boolean success = false;
+        try {
+            long size = this.channel.size();
+            this.mapped = map && size <= Integer.MAX_VALUE ? this.channel.map(MapMode.READ_ONLY, 0, size) : null;
+
+            ImmutableList.Builder<RawZipEntry> entries = ImmutableList.builder();
+            Map<String, RawZipEntry> entriesByName = Maps.newHashMap();
+            readCentralDirectory(entries, entriesByName);
+            this.entries = entries.build();
+            this.entriesByName = ImmutableMap.copyOf(entriesByName);
+            success = true;
+        } finally {
+            if (!success) {
+                this.in.close();
+            }
+        }
+    }
+
+    private void readCentralDirectory(ImmutableList.Builder<RawZipEntry> entries, Map<String, RawZipEntry> entriesByName)
+            throws IOException {
+        long length = this.channel.size();
+        int tailSize = (int) Math.min(length, END_HEADER_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = read(length - tailSize, tailSize);
+
+        int end = -1;
+        for (int pos = tailSize - END_HEADER_SIZE; pos >= 0; pos--) {
+            if (tail.getInt(pos) == END_HEADER) {
+                end = pos;
+                break;
+            }
+        }
+
+        if (end < 0) {
+            throw new ZipException("Missing end of central directory in " + this.file);
+        }
+
+        int count = tail.getShort(end + 10) & 0xFFFF;
+        long size = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long offset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || size == 0xFFFFFFFFL || offset == 0xFFFFFFFFL) {
+            throw new ZipException("ZIP64 is not supported: " + this.file);
+        }
+
+        ByteBuffer buf = read(offset, (int) size);
+        for (int i = 0; i < count; i++) {
+            int pos = buf.position();
+            if (buf.getInt(pos) != CENTRAL_HEADER) {
+                throw new ZipException("Invalid central directory header in " + this.file);
+            }
+
+            int nameLength = buf.getShort(pos + 28) & 0xFFFF;
+            int extraLength = buf.getShort(pos + 30) & 0xFFFF;
+            int commentLength = buf.getShort(pos + 32) & 0xFFFF;
+
+            buf.position(pos + CENTRAL_HEADER_SIZE);
+            byte[] nameBytes = get(buf, nameLength);
+            byte[] extra = get(buf, extraLength);
+            byte[] comment = get(buf, commentLength);
+
+            String name = new String(nameBytes, UTF_8);
+            RawZipEntry entry = new RawZipEntry(name, nameBytes,
+                    buf.getShort(pos + 4) & 0xFFFF, // Version made by
+                    buf.getShort(pos + 6) & 0xFFFF, // Version needed
+                    buf.getShort(pos + 8) & 0xFFFF, // Flags
+                    buf.getShort(pos + 10) & 0xFFFF, // Method
+                    buf.getShort(pos + 12) & 0xFFFF, // Time
+                    buf.getShort(pos + 14) & 0xFFFF, // Date
+                    buf.getInt(pos + 16) & 0xFFFFFFFFL, // CRC
+                    buf.getInt(pos + 20) & 0xFFFFFFFFL, // Compressed size
+                    buf.getInt(pos + 24) & 0xFFFFFFFFL, // Size
+                    extra, comment,
+                    buf.getShort(pos + 36) & 0xFFFF, // Internal attributes
+                    buf.getInt(pos + 38) & 0xFFFFFFFFL, // External attributes
+                    buf.getInt(pos + 42) & 0xFFFFFFFFL); // Local header offset
+
+            entries.add(entry);
+            if (!entriesByName.containsKey(name)) {
+                entriesByName.put(name, entry);
+            }
+        }
+    }
+
+    private static byte[] get(ByteBuffer buf, int length) {
+        byte[] result = new byte[length];
+        buf.get(result);
+        return result;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        if (this.mapped != null) {
+            if (position < 0 || position + length > this.mapped.capacity()) {
+                throw new EOFException("Unexpected end of " + this.file);
+            }
+
+            ByteBuffer source = this.mapped.duplicate();
+            source.position((int) position);
+            source.get(buf.array(), 0, length);
+            return buf;
+        }
+
+        while (buf.hasRemaining()) {
+            if (this.channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException("Unexpected end of " + this.file);
+            }
+        }
+
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Gets the {@link File} of this ZIP file.
+     *
+     * @return The file
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Gets all entries in this ZIP file in the order of the central
+     * directory.
+     *
+     * @return All entries
+     */
+    public List<RawZipEntry> getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * Gets the entry with the specified name.
+     *
+     * @param name The name of the entry
+     * @return The entry, or {@code null} if not found
+     */
+    public RawZipEntry getEntry(String name) {
+        return this.entriesByName.get(name);
+    }
+
+    private long getDataOffset(RawZipEntry entry) throws IOException {
+        long dataOffset = entry.dataOffset;
+        if (dataOffset < 0) {
+            ByteBuffer header = read(entry.offset, LOCAL_HEADER_SIZE);
+            if (header.getInt(0) != LOCAL_HEADER) {
+                throw new ZipException("Invalid local header for " + entry + " in " + this.file);
+            }
+
+            int nameLength = header.getShort(26) & 0xFFFF;
+            int extraLength = header.getShort(28) & 0xFFFF;
+            dataOffset = entry.offset + LOCAL_HEADER_SIZE + nameLength;
+
+            ByteBuffer extra = read(dataOffset, extraLength);
+            entry.localExtra = extra.array();
+            dataOffset += extraLength;
+            entry.dataOffset = dataOffset;
+        }
+
+        return dataOffset;
+    }
+
+    byte[] getLocalExtra(RawZipEntry entry) throws IOException {
+        getDataOffset(entry);
+        return entry.localExtra;
+    }
+
+    /**
+     * Reads the raw (possibly compressed) data of the specified entry.
+     *
+     * @param entry The entry to read
+     * @return The raw data of the entry
+     * @throws IOException If reading the entry fails
+     */
+    public byte[] getRawBytes(RawZipEntry entry) throws IOException {
+        return read(getDataOffset(entry), (int) entry.compressedSize).array();
+    }
+
+    /**
+     * Reads and decompresses the data of the specified entry.
+     *
+     * @param entry The entry to read
+     * @return The uncompressed data of the entry
+     * @throws IOException If reading or decompressing the entry fails
+     */
+    public byte[] getBytes(RawZipEntry entry) throws IOException {
+        byte[] raw = getRawBytes(entry);
+        if (entry.method == RawZipEntry.STORED) {
+            return raw;
+        } else if (entry.method != RawZipEntry.DEFLATED) {
+            throw new ZipException("Unsupported compression method " + entry.method + " for " + entry);
+        }
+
+        byte[] result = new byte[(int) entry.size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(raw);
+            int pos = 0;
+            while (pos < result.length) {
+                int count = inflater.inflate(result, pos, result.length - pos);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+
+                pos += count;
+            }
+
+            if (pos != result.length) {
+                throw new ZipException("Invalid compressed data for " + entry);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid compressed data for " + entry + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        return result;
+    }
+
+    /**
+     * Transfers the raw (possibly compressed) data of the specified entry to
+     * the specified {@link WritableByteChannel}.
+     *
+     * @param entry The entry to transfer
+     * @param target The target channel
+     * @throws IOException If reading or writing the entry fails
+     */
+    public void transferTo(RawZipEntry entry, WritableByteChannel target) throws IOException {
+        long position = getDataOffset(entry);
+        long remaining = entry.compressedSize;
+        while (remaining > 0) {
+            long count = this.channel.transferTo(position, remaining, target);
+            if (count <= 0) {
+                throw new EOFException("Unexpected end of " + this.file);
+            }
+
+            position += count;
+            remaining -= count;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+}
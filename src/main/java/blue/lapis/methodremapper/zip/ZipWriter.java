@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.zip;
+
+import static blue.lapis.methodremapper.zip.RawZipFile.CENTRAL_HEADER;
+import static blue.lapis.methodremapper.zip.RawZipFile.CENTRAL_HEADER_SIZE;
+import static blue.lapis.methodremapper.zip.RawZipFile.END_HEADER;
+import static blue.lapis.methodremapper.zip.RawZipFile.END_HEADER_SIZE;
+import static blue.lapis.methodremapper.zip.RawZipFile.LOCAL_HEADER;
+import static blue.lapis.methodremapper.zip.RawZipFile.LOCAL_HEADER_SIZE;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.collect.Lists;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes ZIP or JAR files entry by entry. In addition to entries with new
+ * data, entries can be copied from a {@link RawZipFile} without decompressing
+ * them, keeping their compressed data, CRC and sizes.
+ *
+ * <p>Entries are compressed using {@link #compress(RawZipEntry, byte[])},
+ * which can be called from multiple threads. The remaining methods may only
+ * be called from a single thread.</p>
+ */
+public class ZipWriter implements Closeable {
+
+    private static final int MAX_VALUE = 0xFFFF;
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+
+    private static final ThreadLocal<Deflater> deflater = new ThreadLocal<Deflater>() {
+
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+
+    };
+
+    private final WritableByteChannel channel;
+    private final List<RawZipEntry> entries = Lists.newArrayList();
+    private long offset;
+    private boolean closed;
+
+    /**
+     * Creates a new {@link ZipWriter} writing to the specified
+     * {@link OutputStream}. The stream will be closed together with the
+     * writer.
+     *
+     * @param out The output stream to write to
+     */
+    public ZipWriter(OutputStream out) {
+        checkNotNull(out, "out");
+        this.channel = out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : Channels.newChannel(out);
+    }
+
+    /**
+     * Represents the (compressed) data of an entry ready to be written.
+     */
+    public static final class Data {
+
+        private final RawZipEntry entry;
+        private final byte[] bytes;
+        private final int length;
+
+        Data(RawZipEntry entry, byte[] bytes, int length) {
+            this.entry = entry;
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        /**
+         * Gets the entry of this data.
+         *
+         * @return The entry
+         */
+        public RawZipEntry getEntry() {
+            return this.entry;
+        }
+
+    }
+
+    /**
+     * Compresses the specified data for an entry. The entry will keep all
+     * attributes of the specified template entry, including its compression
+     * method. This method is thread-safe.
+     *
+     * @param template The template entry, e.g. from a {@link RawZipFile}
+     * @param bytes The uncompressed data of the entry
+     * @return The compressed data, ready to be written
+     * @throws ZipException If the data is too large
+     */
+    public static Data compress(RawZipEntry template, byte[] bytes) throws ZipException {
+        checkNotNull(template, "template");
+        checkNotNull(bytes, "bytes");
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        if (template.method == RawZipEntry.STORED) {
+            return new Data(new RawZipEntry(template, RawZipEntry.STORED, crc.getValue(), bytes.length, bytes.length),
+                    bytes, bytes.length);
+        }
+
+        Deflater deflater = ZipWriter.deflater.get();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            byte[] buf = new byte[Math.max(64, bytes.length + (bytes.length >> 3))];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+
+                length += deflater.deflate(buf, length, buf.length - length);
+            }
+
+            return new Data(new RawZipEntry(template, RawZipEntry.DEFLATED, crc.getValue(), length, bytes.length), buf, length);
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    /**
+     * Compresses and writes an entry with the specified data.
+     *
+     * @param template The template entry, e.g. from a {@link RawZipFile}
+     * @param bytes The uncompressed data of the entry
+     * @throws IOException If writing the entry fails
+     */
+    public void write(RawZipEntry template, byte[] bytes) throws IOException {
+        write(compress(template, bytes));
+    }
+
+    /**
+     * Writes an entry with data that was compressed using
+     * {@link #compress(RawZipEntry, byte[])}.
+     *
+     * @param data The compressed data of the entry
+     * @throws IOException If writing the entry fails
+     */
+    public void write(Data data) throws IOException {
+        RawZipEntry entry = data.entry;
+        writeLocalHeader(entry, entry.localExtra);
+        writeFully(ByteBuffer.wrap(data.bytes, 0, data.length));
+        this.offset += data.length;
+    }
+
+    /**
+     * Copies the specified entry from the {@link RawZipFile} without
+     * decompressing its data.
+     *
+     * @param zip The ZIP file to copy the entry from
+     * @param entry The entry to copy
+     * @throws IOException If reading or writing the entry fails
+     */
+    public void copy(RawZipFile zip, RawZipEntry entry) throws IOException {
+        copy(zip, entry, entry);
+    }
+
+    /**
+     * Copies the data of the specified entry from the {@link RawZipFile}
+     * without decompressing it. All other attributes (e.g. the name and the
+     * modification time) are taken from the template entry.
+     *
+     * @param zip The ZIP file to copy the entry from
+     * @param entry The entry to copy the data from
+     * @param template The template entry, e.g. from a different
+     *        {@link RawZipFile}
+     * @throws IOException If reading or writing the entry fails
+     */
+    public void copy(RawZipFile zip, RawZipEntry entry, RawZipEntry template) throws IOException {
+        RawZipEntry copy = new RawZipEntry(template, entry.method, entry.crc, entry.compressedSize, entry.size);
+        writeLocalHeader(copy, zip.getLocalExtra(entry));
+        zip.transferTo(entry, this.channel);
+        this.offset += entry.compressedSize;
+    }
+
+    private void writeLocalHeader(RawZipEntry entry, byte[] extra) throws IOException {
+        checkState(!this.closed, "Writer is closed");
+        if (extra == null) {
+            extra = entry.extra;
+        }
+
+        if (this.offset > MAX_SIZE || entry.compressedSize > MAX_SIZE || entry.size > MAX_SIZE) {
+            throw new ZipException("ZIP64 is not supported: " + entry);
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(LOCAL_HEADER_SIZE + entry.nameBytes.length + extra.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(LOCAL_HEADER);
+        buf.putShort((short) entry.versionNeeded);
+        buf.putShort((short) entry.flags);
+        buf.putShort((short) entry.method);
+        buf.putShort((short) entry.time);
+        buf.putShort((short) entry.date);
+        buf.putInt((int) entry.crc);
+        buf.putInt((int) entry.compressedSize);
+        buf.putInt((int) entry.size);
+        buf.putShort((short) entry.nameBytes.length);
+        buf.putShort((short) extra.length);
+        buf.put(entry.nameBytes);
+        buf.put(extra);
+
+        buf.flip();
+        writeFully(buf);
+
+        this.entries.add(new RawZipEntry(entry.getName(), entry.nameBytes, entry.versionMadeBy, entry.versionNeeded, entry.flags,
+                entry.method, entry.time, entry.date, entry.crc, entry.compressedSize, entry.size, entry.extra, entry.comment,
+                entry.internalAttributes, entry.externalAttributes, this.offset));
+        this.offset += buf.limit();
+    }
+
+    private void writeFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            this.channel.write(buf);
+        }
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        if (this.entries.size() > MAX_VALUE || this.offset > MAX_SIZE) {
+            throw new ZipException("ZIP64 is not supported");
+        }
+
+        long start = this.offset;
+        for (RawZipEntry entry : this.entries) {
+            ByteBuffer buf = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + entry.nameBytes.length + entry.extra.length
+                    + entry.comment.length).order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(CENTRAL_HEADER);
+            buf.putShort((short) entry.versionMadeBy);
+            buf.putShort((short) entry.versionNeeded);
+            buf.putShort((short) entry.flags);
+            buf.putShort((short) entry.method);
+            buf.putShort((short) entry.time);
+            buf.putShort((short) entry.date);
+            buf.putInt((int) entry.crc);
+            buf.putInt((int) entry.compressedSize);
+            buf.putInt((int) entry.size);
+            buf.putShort((short) entry.nameBytes.length);
+            buf.putShort((short) entry.extra.length);
+            buf.putShort((short) entry.comment.length);
+            buf.putShort((short) 0); // Disk number
+            buf.putShort((short) entry.internalAttributes);
+            buf.putInt((int) entry.externalAttributes);
+            buf.putInt((int) entry.offset);
+            buf.put(entry.nameBytes);
+            buf.put(entry.extra);
+            buf.put(entry.comment);
+
+            buf.flip();
+            writeFully(buf);
+            this.offset += buf.limit();
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(END_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(END_HEADER);
+        buf.putShort((short) 0); // Disk number
+        buf.putShort((short) 0); // Disk with central directory
+        buf.putShort((short) this.entries.size());
+        buf.putShort((short) this.entries.size());
+        buf.putInt((int) (this.offset - start));
+        buf.putInt((int) start);
+        buf.putShort((short) 0); // Comment length
+
+        buf.flip();
+        writeFully(buf);
+    }
+
+    /**
+     * Writes the central directory and closes the underlying stream.
+     *
+     * @throws IOException If writing the central directory fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+        try {
+            writeCentralDirectory();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+}
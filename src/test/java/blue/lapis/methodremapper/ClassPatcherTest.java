@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import static blue.lapis.methodremapper.TestClasses.VOID;
+import static blue.lapis.methodremapper.TestClasses.createClass;
+import static blue.lapis.methodremapper.TestClasses.createHandleClass;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.objectweb.asm.Opcodes.V1_4;
+import static org.objectweb.asm.Opcodes.V1_6;
+import static org.objectweb.asm.Opcodes.V1_7;
+
+import com.google.common.collect.ImmutableTable;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class ClassPatcherTest {
+
+    private static final ImmutableTable<String, String, String> MAPPINGS =
+            ImmutableTable.<String, String, String>builder()
+            .put("java/lang/Object", "toString()Ljava/lang/String;", "str")
+            .put("java/util/Iterator", "hasNext()Z", "more")
+            .put("java/util/Iterator", "next()Ljava/lang/Object;", "nextElement")
+            .put("java/util/List", "size()I", "count")
+            .put("com/google/common/base/Function", "apply(Ljava/lang/Object;)Ljava/lang/Object;", "transform")
+            .put("test/Base", "run" + VOID, "execute")
+            .build();
+
+    // Classes from the libraries that declare or invoke some of the mapped methods
+    private static final String[] CLASSES = {
+            "com/google/common/base/Joiner",
+            "com/google/common/collect/ImmutableList",
+            "com/google/common/collect/Iterators",
+            "com/google/common/collect/Lists",
+            "org/objectweb/asm/ClassReader",
+            "org/objectweb/asm/ClassWriter",
+            "org/objectweb/asm/Type"
+    };
+
+    private final TestClasses.Provider provider = new TestClasses.Provider()
+            .add("test/Base", createClass(V1_6, "test/Base", "java/lang/Object", null, null, false, "run"))
+            .add("test/Sub", createClass(V1_6, "test/Sub", "test/Base", null, "test/Base", false, "run", "stop"));
+    private final Remapper remapper = new Remapper(this.provider, MAPPINGS);
+
+    @Test
+    public void patchLikeVisitor() throws Exception {
+        int patched = 0;
+        for (String name : CLASSES) {
+            ClassReader reader = new ClassReader(TestClasses.read(name));
+            if (patch(reader) != null) {
+                patched++;
+            }
+
+            assertArrayEquals(name, normalize(rewrite(reader)), normalize(this.remapper.remap(reader)));
+        }
+
+        assertTrue("No class was patched", patched > 0);
+    }
+
+    @Test
+    public void patchClassAtOffset() throws Exception {
+        String[] names = Arrays.copyOf(CLASSES, CLASSES.length + 1);
+        names[CLASSES.length] = "test/Sub";
+        for (String name : names) {
+            byte[] bytes = this.provider.getClass(name).b;
+
+            // Surround the class with other data, like a class reader reading from a larger buffer
+            byte[] buffer = new byte[bytes.length + 20];
+            Arrays.fill(buffer, (byte) 0x5A);
+            System.arraycopy(bytes, 0, buffer, 11, bytes.length);
+
+            byte[] result = this.remapper.remap(new ClassReader(buffer, 11, bytes.length));
+            assertArrayEquals(name, this.remapper.remap(new ClassReader(bytes)), result);
+            assertArrayEquals(name, normalize(rewrite(new ClassReader(bytes))), normalize(result));
+        }
+    }
+
+    @Test
+    public void fallBackForMethodHandles() throws Exception {
+        byte[] bytes = createHandleClass(V1_7, "test/Handle", "test/Base", "run");
+        ClassReader reader = new ClassReader(bytes);
+
+        // The visitor doesn't remap method handles, so the shared method reference can't be patched
+        assertNull(patch(reader));
+
+        byte[] result = this.remapper.remap(reader);
+        assertFalse(Arrays.equals(bytes, result));
+        assertArrayEquals(normalize(rewrite(reader)), normalize(result));
+    }
+
+    @Test
+    public void fallBackBeforeJava5() throws Exception {
+        // Synthetic methods are marked with an attribute before Java 5, so declarations can't be patched
+        byte[] bytes = createClass(V1_4, "test/Old", "test/Base", null, null, false, "run");
+        ClassReader reader = new ClassReader(bytes);
+        this.provider.add("test/Old", bytes);
+        assertNull(patch(reader));
+        assertArrayEquals(normalize(rewrite(reader)), normalize(this.remapper.remap(reader)));
+
+        // Invokes don't depend on the class version
+        bytes = createClass(V1_4, "test/OldCaller", "java/lang/Object", null, "test/Base", false, "run");
+        reader = new ClassReader(bytes);
+        assertNotNull(patch(reader));
+        assertArrayEquals(normalize(rewrite(reader)), normalize(this.remapper.remap(reader)));
+    }
+
+    private byte[] patch(ClassReader reader) throws IOException {
+        MethodMap mappings = (MethodMap) this.remapper.getMappings(reader.getClassName());
+        return new ClassPatcher(this.remapper, reader).patch(mappings);
+    }
+
+    // Remaps the class using the visitors, which the patched class must be equivalent to
+    private byte[] rewrite(ClassReader reader) throws IOException {
+        MethodMap mappings = (MethodMap) this.remapper.getMappings(reader.getClassName());
+        ClassWriter writer = new ClassWriter(0);
+        reader.accept(mappings != null ? new RemapClassVisitor(writer, this.remapper, mappings)
+                : new RemapInvokeClassVisitor(writer, this.remapper), 0);
+        return writer.toByteArray();
+    }
+
+    // Writes the class again with a new constant pool, so unused and reordered entries don't matter
+    private static byte[] normalize(byte[] bytes) {
+        ClassWriter writer = new ClassWriter(0);
+        new ClassReader(bytes).accept(writer, 0);
+        return writer.toByteArray();
+    }
+
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import static blue.lapis.methodremapper.TestClasses.VOID;
+import static blue.lapis.methodremapper.TestClasses.createClass;
+import static blue.lapis.methodremapper.TestClasses.createInterface;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.objectweb.asm.Opcodes.V1_6;
+
+import blue.lapis.methodremapper.provider.ClassProvider;
+
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConcurrentResolutionTest {
+
+    private static final int THREADS = 16;
+    // Threads with the same order contend for the same classes, the others for their super classes
+    private static final int ORDERS = 4;
+    private static final int DEPTH = 20;
+
+    private static final ImmutableTable<String, String, String> MAPPINGS =
+            ImmutableTable.<String, String, String>builder()
+            .put("test/Base", "run" + VOID, "execute")
+            .put("test/Named", "name" + VOID, "getName")
+            .build();
+
+    private static final String[] NAMED = {"test/Named"};
+
+    @Test(timeout = 30000)
+    public void resolveOverlappingHierarchies() throws Exception {
+        TestClasses.Provider classes = createHierarchy(false);
+        List<String> names = getNames(false);
+
+        // Resolve the hierarchy on a single thread first to get the expected mappings
+        Remapper expected = new Remapper(classes, MAPPINGS);
+
+        BlockingProvider provider = new BlockingProvider(classes);
+        Remapper remapper = new Remapper(provider, MAPPINGS);
+        List<Map<String, Map<String, String>>> results = resolveConcurrently(remapper, provider, names);
+        for (Map<String, Map<String, String>> result : results) {
+            for (String name : names) {
+                assertEquals(name, expected.getMappings(name), result.get(name));
+            }
+        }
+
+        provider.assertLoadedOnce();
+    }
+
+    @Test(timeout = 30000)
+    public void resolveCircularHierarchies() throws Exception {
+        TestClasses.Provider classes = createHierarchy(true);
+        List<String> names = getNames(true);
+
+        BlockingProvider provider = new BlockingProvider(classes);
+        Remapper remapper = new Remapper(provider, MAPPINGS);
+        List<Map<String, Map<String, String>>> results = resolveConcurrently(remapper, provider, names);
+        for (Map<String, Map<String, String>> result : results) {
+            // The classes implementing the mapped interface always inherit its mappings, wherever the cycle is entered
+            for (String name : new String[]{"test/CycleB", "test/Cycle2"}) {
+                assertNotNull(name, result.get(name));
+                assertEquals(name, "getName", result.get(name).get("name" + VOID));
+            }
+        }
+
+        provider.assertLoadedOnce();
+    }
+
+    // Chains and diamonds that share their super classes, optionally with cycles of two and three classes
+    private static TestClasses.Provider createHierarchy(boolean cycles) {
+        TestClasses.Provider provider = new TestClasses.Provider()
+                .add("test/Base", createClass(V1_6, "test/Base", "java/lang/Object", null, null, false, "run"))
+                .add("test/Named", createInterface(V1_6, "test/Named", null, "name"));
+
+        String parent = "test/Base";
+        for (int i = 0; i < DEPTH; i++) {
+            String chain = "test/Chain" + i;
+            String left = "test/Left" + i;
+            String right = "test/Right" + i;
+            String diamond = "test/Diamond" + i;
+            provider.add(chain, createClass(V1_6, chain, parent, null, parent, false, "run"))
+                    .add(left, createClass(V1_6, left, chain, NAMED, null, false, "name"))
+                    .add(right, createInterface(V1_6, right, NAMED, "name"))
+                    .add(diamond, createClass(V1_6, diamond, left, new String[]{right}, right, true, "name", "run"));
+            parent = chain;
+        }
+
+        if (cycles) {
+            provider.add("test/CycleA", createClass(V1_6, "test/CycleA", "test/CycleB", null, null, false, "run"))
+                    .add("test/CycleB", createClass(V1_6, "test/CycleB", "test/CycleA", NAMED, null, false, "name"))
+                    .add("test/Cycle1", createClass(V1_6, "test/Cycle1", "test/Cycle2", null, null, false))
+                    .add("test/Cycle2", createClass(V1_6, "test/Cycle2", "test/Cycle3", NAMED, null, false))
+                    .add("test/Cycle3", createClass(V1_6, "test/Cycle3", "test/Cycle1", null, null, false, "name"));
+        }
+
+        return provider;
+    }
+
+    private static List<String> getNames(boolean cycles) {
+        List<String> names = Lists.newArrayList();
+        for (int i = 0; i < DEPTH; i++) {
+            Collections.addAll(names, "test/Chain" + i, "test/Left" + i, "test/Right" + i, "test/Diamond" + i);
+        }
+
+        if (cycles) {
+            Collections.addAll(names, "test/CycleA", "test/CycleB", "test/Cycle1", "test/Cycle2", "test/Cycle3");
+        }
+
+        return names;
+    }
+
+    // Resolves all classes on many threads in a few different orders
+    private static List<Map<String, Map<String, String>>> resolveConcurrently(final Remapper remapper,
+            final BlockingProvider provider, List<String> names) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Map<String, Map<String, String>>>> futures = Lists.newArrayList();
+            for (int i = 0; i < THREADS; i++) {
+                final List<String> order = Lists.newArrayList(names);
+                Collections.shuffle(order, new Random(i % ORDERS));
+                futures.add(executor.submit(new Callable<Map<String, Map<String, String>>>() {
+
+                    @Override
+                    public Map<String, Map<String, String>> call() throws IOException {
+                        provider.awaitStart();
+                        Map<String, Map<String, String>> result = Maps.newHashMap();
+                        for (String name : order) {
+                            result.put(name, remapper.getMappings(name));
+                        }
+                        return result;
+                    }
+
+                }));
+            }
+
+            // Let all threads start resolving classes at the same time
+            provider.start();
+
+            List<Map<String, Map<String, String>>> results = Lists.newArrayList();
+            for (Future<Map<String, Map<String, String>>> future : futures) {
+                try {
+                    results.add(future.get(20, TimeUnit.SECONDS));
+                } catch (TimeoutException e) {
+                    fail("Resolution didn't complete, probably deadlocked");
+                } catch (ExecutionException e) {
+                    throw new AssertionError(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Blocks all threads until started and delays loading classes, so the threads resolve the same classes at once
+    private static final class BlockingProvider implements ClassProvider {
+
+        private final ClassProvider provider;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final ConcurrentMap<String, AtomicInteger> loads = new ConcurrentHashMap<String, AtomicInteger>();
+
+        BlockingProvider(ClassProvider provider) {
+            this.provider = provider;
+        }
+
+        void start() {
+            this.started.countDown();
+        }
+
+        void awaitStart() {
+            Uninterruptibles.awaitUninterruptibly(this.started);
+        }
+
+        @Override
+        public ClassReader getClass(String name) throws IOException {
+            awaitStart();
+
+            AtomicInteger count = new AtomicInteger();
+            AtomicInteger previous = this.loads.putIfAbsent(name, count);
+            (previous != null ? previous : count).incrementAndGet();
+
+            Uninterruptibles.sleepUninterruptibly(1, TimeUnit.MILLISECONDS);
+            return this.provider.getClass(name);
+        }
+
+        void assertLoadedOnce() {
+            for (Map.Entry<String, AtomicInteger> entry : this.loads.entrySet()) {
+                assertTrue(entry.getKey() + " was loaded " + entry.getValue() + " times", entry.getValue().get() == 1);
+            }
+        }
+
+    }
+
+}
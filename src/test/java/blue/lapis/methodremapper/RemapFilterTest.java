@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import static blue.lapis.methodremapper.TestClasses.VOID;
+import static blue.lapis.methodremapper.TestClasses.createClass;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.POP;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.V1_6;
+
+import com.google.common.collect.ImmutableTable;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+
+import java.util.Arrays;
+
+public class RemapFilterTest {
+
+    private final Remapper remapper = new Remapper(new TestClasses.Provider(),
+            ImmutableTable.of("test/Base", "run" + VOID, "execute"));
+
+    @Test
+    public void skipUnrelatedClass() throws Exception {
+        byte[] bytes = createClass(V1_6, "test/Other", "java/lang/Object", null, "test/Other", false, "stop");
+        assertFalse(this.remapper.isRemapRequired(bytes));
+        assertSame(bytes, this.remapper.remap(bytes));
+        assertSame(bytes, this.remapper.remap(new ClassReader(bytes)));
+    }
+
+    @Test
+    public void skipClassOnlyContainingMappedName() throws Exception {
+        // The name of the mapped method only appears as string constant, which the byte filter can't tell apart
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(V1_6, ACC_PUBLIC, "test/Constant", null, "java/lang/Object", null);
+        MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "test", VOID, null, null);
+        mv.visitCode();
+        mv.visitLdcInsn("run");
+        mv.visitInsn(POP);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+        writer.visitEnd();
+        byte[] bytes = writer.toByteArray();
+
+        assertTrue(this.remapper.isRemapRequired(bytes));
+        assertFalse(this.remapper.isRemapRequired(new ClassReader(bytes)));
+        assertSame(bytes, this.remapper.remap(bytes));
+    }
+
+    @Test
+    public void skipClassAtOffset() throws Exception {
+        byte[] bytes = createClass(V1_6, "test/Other", "java/lang/Object", null, "test/Other", false, "stop");
+
+        // Surround the class with other data, like a class reader reading from a larger buffer
+        byte[] buffer = new byte[bytes.length + 20];
+        Arrays.fill(buffer, (byte) 0x5A);
+        System.arraycopy(bytes, 0, buffer, 7, bytes.length);
+
+        assertArrayEquals(bytes, this.remapper.remap(new ClassReader(buffer, 7, bytes.length)));
+    }
+
+}
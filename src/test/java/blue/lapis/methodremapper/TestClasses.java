@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper;
+
+import static org.objectweb.asm.Opcodes.ACC_ABSTRACT;
+import static org.objectweb.asm.Opcodes.ACC_INTERFACE;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACONST_NULL;
+import static org.objectweb.asm.Opcodes.H_INVOKEVIRTUAL;
+import static org.objectweb.asm.Opcodes.INVOKEINTERFACE;
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
+import static org.objectweb.asm.Opcodes.POP;
+import static org.objectweb.asm.Opcodes.RETURN;
+
+import blue.lapis.methodremapper.provider.ClassProvider;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.Resources;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Generates classes for the tests. All generated methods are public, don't
+ * have any parameters and return {@code void}.
+ */
+final class TestClasses {
+
+    static final String VOID = "()V";
+
+    private TestClasses() {
+    }
+
+    /**
+     * Creates a class declaring the specified methods. If the owner is not
+     * {@code null}, each method invokes the method with the same name on it.
+     */
+    static byte[] createClass(int version, String name, String superName, String[] interfaces, String owner,
+            boolean ownerInterface, String... methods) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(version, ACC_PUBLIC, name, null, superName, interfaces);
+        for (String method : methods) {
+            MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, method, VOID, null, null);
+            mv.visitCode();
+            if (owner != null) {
+                mv.visitInsn(ACONST_NULL);
+                int opcode = ownerInterface ? INVOKEINTERFACE : INVOKEVIRTUAL;
+                mv.visitMethodInsn(opcode, owner, method, VOID, ownerInterface);
+            }
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Creates an interface declaring the specified abstract methods.
+     */
+    static byte[] createInterface(int version, String name, String[] interfaces, String... methods) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(version, ACC_PUBLIC | ACC_INTERFACE | ACC_ABSTRACT, name, null, "java/lang/Object", interfaces);
+        for (String method : methods) {
+            writer.visitMethod(ACC_PUBLIC | ACC_ABSTRACT, method, VOID, null, null).visitEnd();
+        }
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Creates a class that invokes the method on the owner and also loads a
+     * method handle to it, which shares the method reference.
+     */
+    static byte[] createHandleClass(int version, String name, String owner, String method) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(version, ACC_PUBLIC, name, null, "java/lang/Object", null);
+        MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "test", VOID, null, null);
+        mv.visitCode();
+        mv.visitInsn(ACONST_NULL);
+        mv.visitMethodInsn(INVOKEVIRTUAL, owner, method, VOID, false);
+        mv.visitLdcInsn(new Handle(H_INVOKEVIRTUAL, owner, method, VOID));
+        mv.visitInsn(POP);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Reads the bytes of a class available to the tests, e.g. from the
+     * runtime or one of the libraries.
+     */
+    static byte[] read(String name) throws IOException {
+        URL url = ClassLoader.getSystemResource(name + ".class");
+        return url != null ? Resources.toByteArray(url) : null;
+    }
+
+    /**
+     * Provides the added classes, and all other classes available to the
+     * tests.
+     */
+    static class Provider implements ClassProvider {
+
+        private final Map<String, byte[]> classes = Maps.newHashMap();
+
+        Provider add(String name, byte[] bytes) {
+            this.classes.put(name, bytes);
+            return this;
+        }
+
+        @Override
+        public ClassReader getClass(String name) throws IOException {
+            byte[] bytes = this.classes.get(name);
+            if (bytes == null) {
+                bytes = read(name);
+            }
+            return bytes != null ? new ClassReader(bytes) : null;
+        }
+
+    }
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.tweaker;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores remapped classes on disk, so they don't need to be remapped again
+ * when the application is started the next time.
+ *
+ * <p>The classes are stored in a pack file for each fingerprint of
+ * everything all remapped classes depend on (e.g. the mappings and the
+ * remapper version), so the cache is invalidated if one of them changes.
+ * Within the pack file, the classes are addressed by a key provided by the
+ * caller, e.g. a hash of the original class bytes and of the class path
+ * their class hierarchy is loaded from. The pack file is append-only: Each
+ * record consists of the key, the length and the bytes of the remapped
+ * class. It is memory-mapped when the cache is opened and indexed by
+ * scanning the record headers, so looking up a class only needs a single
+ * hash lookup and a copy of its bytes.</p>
+ *
+ * <p>Only one process can add classes to a pack file at the same time, other
+ * processes using the same pack file only read the classes.</p>
+ */
+public final class ClassCache implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClassCache.class);
+
+    /**
+     * The hash function used for the keys of the classes.
+     */
+    public static final HashFunction HASH = Hashing.sha1();
+
+    private static final int KEY_SIZE = HASH.bits() / Byte.SIZE;
+    private static final int HEADER_SIZE = KEY_SIZE + 4;
+    // Length of records for classes that didn't change when remapping them
+    private static final int UNCHANGED = -1;
+
+    private static final String EXTENSION = ".pack";
+    // Pack files that haven't been used for this time are removed
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(7);
+
+    private final File file;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final ByteBuffer buffer;
+    private final Map<HashCode, Integer> index;
+    private final Set<HashCode> added = Sets.newHashSet();
+
+    private ClassCache(File file, FileChannel channel, FileLock lock, ByteBuffer buffer, Map<HashCode, Integer> index) {
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+        this.buffer = buffer;
+        this.index = index;
+    }
+
+    /**
+     * Opens the pack file for the specified fingerprint in the cache
+     * directory, or creates it if it doesn't exist yet.
+     *
+     * @param dir The cache directory
+     * @param fingerprint The fingerprint of everything the remapped classes
+     *        depend on
+     * @return The class cache
+     * @throws IOException If the pack file couldn't be opened
+     */
+    public static ClassCache open(File dir, HashCode fingerprint) throws IOException {
+        checkNotNull(dir, "dir");
+        checkNotNull(fingerprint, "fingerprint");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create cache directory: " + dir);
+        }
+
+        File file = new File(dir, fingerprint + EXTENSION);
+        prune(dir, file);
+
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null; // Already opened by this process
+            }
+
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                if (lock == null) {
+                    throw new IOException("Cache file is too large: " + file);
+                }
+
+                channel.truncate(0);
+                size = 0;
+            }
+
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            Map<HashCode, Integer> index = Maps.newHashMap();
+            int end = read(buffer, index);
+
+            if (lock != null) {
+                // Remove a record that was only partially written, e.g. because the process was killed
+                if (end < size) {
+                    logger.warn("Removing incomplete record from {}", file);
+                    channel.truncate(end);
+                }
+
+                channel.position(end);
+                file.setLastModified(System.currentTimeMillis());
+            } else {
+                logger.info("{} is used by another process, remapped classes won't be added", file);
+            }
+
+            logger.debug("Opened {} with {} classes", file, index.size());
+            return new ClassCache(file, channel, lock, buffer, index);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Indexes the records in the buffer and returns the end of the last complete record
+    private static int read(ByteBuffer buffer, Map<HashCode, Integer> index) {
+        byte[] key = new byte[KEY_SIZE];
+        int pos = 0;
+        while (buffer.limit() - pos >= HEADER_SIZE) {
+            int length = buffer.getInt(pos + KEY_SIZE);
+            int next = pos + HEADER_SIZE + Math.max(length, 0);
+            if (length < UNCHANGED || next < 0 || next > buffer.limit()) {
+                break;
+            }
+
+            buffer.position(pos);
+            buffer.get(key);
+            index.put(HashCode.fromBytes(key.clone()), pos);
+            pos = next;
+        }
+
+        return pos;
+    }
+
+    private static void prune(File dir, File current) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long limit = System.currentTimeMillis() - MAX_AGE;
+        for (File file : files) {
+            if (!file.equals(current) && file.getName().endsWith(EXTENSION) && file.lastModified() < limit) {
+                if (!file.delete()) {
+                    logger.debug("Failed to delete {}", file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the pack file of this cache.
+     *
+     * @return The pack file
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Gets the remapped class for the specified key.
+     *
+     * @param key The key of the class, a hash using {@link #HASH}
+     * @param original The original class bytes, returned if the class didn't
+     *        change when it was remapped
+     * @return The remapped class, or {@code null} if it isn't cached
+     */
+    public byte[] get(HashCode key, byte[] original) {
+        Integer pos = this.index.get(checkNotNull(key, "key"));
+        if (pos == null) {
+            return null;
+        }
+
+        ByteBuffer buffer = this.buffer.duplicate();
+        int length = buffer.getInt(pos + KEY_SIZE);
+        if (length == UNCHANGED) {
+            return original;
+        }
+
+        byte[] result = new byte[length];
+        buffer.position(pos + HEADER_SIZE);
+        buffer.get(result);
+        return result;
+    }
+
+    /**
+     * Adds a remapped class to the cache. Does nothing if the pack file is
+     * used by another process.
+     *
+     * @param key The key of the class, a hash using {@link #HASH}
+     * @param original The original class bytes
+     * @param result The remapped class bytes
+     * @throws IOException If writing the class to the pack file fails
+     */
+    public synchronized void put(HashCode key, byte[] original, byte[] result) throws IOException {
+        checkNotNull(key, "key");
+        if (this.lock == null || this.index.containsKey(key) || !this.added.add(key)) {
+            return;
+        }
+
+        int length = result != original ? result.length : UNCHANGED;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + Math.max(length, 0));
+        record.put(key.asBytes()).putInt(length);
+        if (length != UNCHANGED) {
+            record.put(result);
+        }
+
+        record.flip();
+        while (record.hasRemaining()) {
+            this.channel.write(record);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.channel.close();
+    }
+
+}
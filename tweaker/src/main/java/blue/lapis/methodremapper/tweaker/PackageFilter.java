@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ * Copyright (c) 2015, Lapis <https://github.com/LapisBlue>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package blue.lapis.methodremapper.tweaker;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Splitter;
+
+import java.util.Arrays;
+
+/**
+ * Decides which classes are passed to the remapper based on the package they
+ * are in. Packages can be included or excluded, the most specific rule
+ * matching the package of a class applies. If any package is included, only
+ * classes in included packages are remapped.
+ *
+ * <p>The rules are stored in a prefix trie of the characters of the package
+ * names, so matching a class name only walks it once and doesn't allocate any
+ * objects.</p>
+ */
+public final class PackageFilter {
+
+    private static final Splitter SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private final Node root = new Node();
+    private boolean includeOthers = true;
+
+    /**
+     * Creates a new {@link PackageFilter} with the specified rules.
+     *
+     * @param includes The included packages, e.g. {@code net.minecraft}
+     * @param excludes The excluded packages
+     */
+    public PackageFilter(Iterable<String> includes, Iterable<String> excludes) {
+        for (String prefix : checkNotNull(includes, "includes")) {
+            add(prefix, Boolean.TRUE);
+            this.includeOthers = false;
+        }
+
+        // Excludes take precedence over includes of the same package
+        for (String prefix : checkNotNull(excludes, "excludes")) {
+            add(prefix, Boolean.FALSE);
+        }
+    }
+
+    /**
+     * Creates a new {@link PackageFilter} from comma-separated lists of
+     * packages.
+     *
+     * @param includes The included packages, or {@code null}
+     * @param excludes The excluded packages, or {@code null}
+     * @return The package filter
+     */
+    public static PackageFilter parse(String includes, String excludes) {
+        return new PackageFilter(SPLITTER.split(includes != null ? includes : ""),
+                SPLITTER.split(excludes != null ? excludes : ""));
+    }
+
+    private void add(String prefix, Boolean include) {
+        // Accept internal names and wildcards, e.g. net/minecraft/*
+        prefix = prefix.replace('/', '.');
+        if (prefix.endsWith("*")) {
+            prefix = prefix.substring(0, prefix.length() - 1);
+        }
+        if (!prefix.isEmpty() && !prefix.endsWith(".")) {
+            prefix += '.';
+        }
+
+        Node node = this.root;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.add(prefix.charAt(i));
+        }
+
+        node.include = include;
+    }
+
+    /**
+     * Returns whether the specified class should be remapped.
+     *
+     * @param name The class name, e.g. {@code net.minecraft.server.MinecraftServer}
+     * @return {@code true} if the class is in an included package
+     */
+    public boolean matches(String name) {
+        Node node = this.root;
+        boolean result = node.include != null ? node.include : this.includeOthers;
+        for (int i = 0; i < name.length(); i++) {
+            node = node.get(name.charAt(i));
+            if (node == null) {
+                break;
+            }
+
+            if (node.include != null) {
+                result = node.include;
+            }
+        }
+
+        return result;
+    }
+
+    private static final class Node {
+
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        // Most nodes only have a single child, so a linear search is the fastest
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private Boolean include;
+
+        Node get(char c) {
+            for (int i = 0; i < this.keys.length; i++) {
+                if (this.keys[i] == c) {
+                    return this.children[i];
+                }
+            }
+
+            return null;
+        }
+
+        Node add(char c) {
+            Node node = get(c);
+            if (node == null) {
+                node = new Node();
+                this.keys = Arrays.copyOf(this.keys, this.keys.length + 1);
+                this.children = Arrays.copyOf(this.children, this.children.length + 1);
+                this.keys[this.keys.length - 1] = c;
+                this.children[this.children.length - 1] = node;
+            }
+
+            return node;
+        }
+
+    }
+
+}
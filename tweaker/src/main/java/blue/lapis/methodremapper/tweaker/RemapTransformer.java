@@ -23,42 +23,201 @@
 
 package blue.lapis.methodremapper.tweaker;
 
+import blue.lapis.methodremapper.BinaryMappings;
+import blue.lapis.methodremapper.Mappings;
+import blue.lapis.methodremapper.MappingsLoader;
 import blue.lapis.methodremapper.Remapper;
-import blue.lapis.methodremapper.RemapperConfig;
+import blue.lapis.methodremapper.metrics.RemapListener;
+import blue.lapis.methodremapper.metrics.RemapStatistics;
 import blue.lapis.methodremapper.provider.ClassProvider;
 
 import com.google.common.base.Throwables;
-import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Resources;
 import net.minecraft.launchwrapper.IClassTransformer;
 import net.minecraft.launchwrapper.Launch;
 import org.objectweb.asm.ClassReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 public class RemapTransformer implements IClassTransformer, ClassProvider {
 
+    private static final Logger logger = LoggerFactory.getLogger(RemapTransformer.class);
+
+    // Log the remapping statistics when the application exits
+    private static final boolean STATISTICS = Boolean.getBoolean("remapper.statistics");
+
+    // Comma-separated packages to remap or to skip, the remapper itself never needs to be remapped
+    private static final String INCLUDE = System.getProperty("remapper.include");
+    private static final String EXCLUDE = System.getProperty("remapper.exclude");
+    private static final String REMAPPER_PACKAGE = "blue.lapis.methodremapper";
+
+    // The directory to store the remapped classes in, disabled by default
+    private static final String CACHE = System.getProperty("remapper.cache");
+
     protected final Remapper remapper;
+    protected final PackageFilter filter;
+    protected final ClassCache cache;
+
+    // The hashes of the class loader sources, each source is only hashed once per launch
+    private final Map<URL, HashCode> sourceHashes = Maps.newHashMap();
+    private int sourceCount = -1;
+    private HashCode classpathFingerprint;
 
     public RemapTransformer() throws IOException {
         this(Launch.blackboard.get("remapper.config"));
     }
 
     protected RemapTransformer(Object config) throws IOException {
-        ImmutableTable<String, String, String> mappings;
+        // The mappings are loaded the same way with and without the cache, the cache only needs their hash
+        URL url = getURL(config);
+        Mappings mappings;
+        HashCode hash = null;
+        if (isBinary(url)) {
+            byte[] bytes = Resources.toByteArray(url);
+            mappings = BinaryMappings.load(ByteBuffer.wrap(bytes));
+            if (CACHE != null) {
+                hash = ClassCache.HASH.hashBytes(bytes);
+            }
+        } else {
+            MappingsLoader loader = MappingsLoader.builder().add(url).build();
+            mappings = loader.load();
+            if (CACHE != null) {
+                hash = loader.hash(ClassCache.HASH);
+            }
+        }
+
+        ClassCache cache = null;
+        if (CACHE != null) {
+            try {
+                cache = ClassCache.open(new File(CACHE), getFingerprint(hash));
+            } catch (IOException e) {
+                logger.warn("Failed to open class cache in {}", CACHE, e);
+            }
+        }
+
+        RemapListener listener = RemapListener.NONE;
+        if (STATISTICS) {
+            final RemapStatistics statistics = new RemapStatistics();
+            Runtime.getRuntime().addShutdownHook(new Thread("Remapper statistics") {
 
+                @Override
+                public void run() {
+                    logger.info("Remapper statistics: {}", statistics);
+                }
+
+            });
+
+            listener = statistics;
+        }
+
+        this.remapper = new Remapper(this, mappings, listener);
+        this.filter = PackageFilter.parse(INCLUDE, EXCLUDE != null ? EXCLUDE + ',' + REMAPPER_PACKAGE : REMAPPER_PACKAGE);
+        this.cache = cache;
+    }
+
+    private static URL getURL(Object config) throws IOException {
         if (config instanceof String) {
-            mappings = RemapperConfig.loadMappings((String) config);
+            File file = new File((String) config);
+            return file.exists() ? file.toURI().toURL() : Resources.getResource((String) config);
         } else if (config instanceof File) {
-            mappings = RemapperConfig.loadMappings((File) config);
+            return ((File) config).toURI().toURL();
         } else if (config instanceof URL) {
-            mappings = RemapperConfig.loadMappings((URL) config);
+            return (URL) config;
         } else {
             throw new UnsupportedOperationException(config.toString());
         }
+    }
+
+    private static boolean isBinary(URL url) throws IOException {
+        byte[] header = new byte[4];
+        InputStream in = url.openStream();
+        try {
+            return ByteStreams.read(in, header, 0, header.length) == header.length
+                    && BinaryMappings.isBinary(ByteBuffer.wrap(header));
+        } finally {
+            in.close();
+        }
+    }
+
+    // Hashes the mappings and the code that remaps the classes, the class path is part of the key of each class
+    private static HashCode getFingerprint(HashCode mappings) {
+        Hasher hasher = ClassCache.HASH.newHasher().putBytes(mappings.asBytes());
+        hashSource(hasher, Remapper.class);
+        hashSource(hasher, ClassReader.class);
+        return hasher.hash();
+    }
+
+    private static void hashSource(Hasher hasher, Class<?> type) {
+        CodeSource source = type.getProtectionDomain().getCodeSource();
+        if (source != null) {
+            hashSource(hasher, source.getLocation());
+        }
+    }
+
+    // Hashes the sources of the class loader, which contain the class hierarchy of the remapped classes
+    private HashCode getClasspathFingerprint() {
+        List<URL> sources = Launch.classLoader.getSources();
+        synchronized (this.sourceHashes) {
+            // Sources are only added, e.g. by other tweakers, so the fingerprint only changes if there are more
+            if (sources.size() != this.sourceCount) {
+                Hasher hasher = ClassCache.HASH.newHasher();
+                for (URL source : sources) {
+                    HashCode hash = this.sourceHashes.get(source);
+                    if (hash == null) {
+                        Hasher sourceHasher = ClassCache.HASH.newHasher();
+                        hashSource(sourceHasher, source);
+                        hash = sourceHasher.hash();
+                        this.sourceHashes.put(source, hash);
+                    }
+
+                    hasher.putBytes(hash.asBytes());
+                }
+
+                this.sourceCount = sources.size();
+                this.classpathFingerprint = hasher.hash();
+            }
+
+            return this.classpathFingerprint;
+        }
+    }
+
+    private static void hashSource(Hasher hasher, URL url) {
+        hasher.putUnencodedChars(url.toString());
+        if (url.getProtocol().equals("file")) {
+            try {
+                hashFile(hasher, new File(url.toURI()));
+            } catch (URISyntaxException ignored) {
+            }
+        }
+    }
 
-        this.remapper = new Remapper(this, mappings);
+    // Only the size and modification time of the files are hashed to keep the startup fast
+    private static void hashFile(Hasher hasher, File file) {
+        hasher.putLong(file.length()).putLong(file.lastModified());
+
+        File[] files = file.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File child : files) {
+                hasher.putUnencodedChars(child.getName());
+                hashFile(hasher, child);
+            }
+        }
     }
 
     @Override
@@ -73,12 +232,28 @@ public ClassReader getClass(String name) throws IOException {
 
     @Override
     public byte[] transform(String name, String transformedName, byte[] basicClass) {
-        if (basicClass == null) {
-            return null;
+        // Return classes that can't reference any mapped method unchanged, without parsing them
+        if (basicClass == null || !this.filter.matches(transformedName) || !this.remapper.isRemapRequired(basicClass)) {
+            return basicClass;
         }
 
         try {
-            return this.remapper.remap(new ClassReader(basicClass));
+            if (this.cache == null) {
+                return this.remapper.remap(new ClassReader(basicClass));
+            }
+
+            // The remapped class also depends on its class hierarchy, which can change without changing the class itself
+            HashCode key = ClassCache.HASH.newHasher()
+                    .putBytes(getClasspathFingerprint().asBytes())
+                    .putBytes(basicClass)
+                    .hash();
+            byte[] result = this.cache.get(key, basicClass);
+            if (result == null) {
+                result = this.remapper.remap(new ClassReader(basicClass));
+                this.cache.put(key, basicClass, result);
+            }
+
+            return result;
         } catch (IOException e) {
             throw Throwables.propagate(e);
         }
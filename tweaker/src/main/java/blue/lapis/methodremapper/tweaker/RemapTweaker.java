@@ -35,6 +35,8 @@
 public class RemapTweaker implements ITweaker {
 
     private static final String CONFIG = System.getProperty("remapper.config", RemapperConfig.STANDARD_FILE_NAME);
+    // A snapshot of the resolved mappings, created by the remap task, replaces the configuration if available
+    private static final String SNAPSHOT = System.getProperty("remapper.snapshot");
     private static final String TRANSFORMER = RemapTweaker.class.getPackage().getName() + ".RemapTransformer";
 
     @Override
@@ -43,7 +45,7 @@ public void acceptOptions(List<String> args, File gameDir, File assetsDir, Strin
 
     @Override
     public void injectIntoClassLoader(LaunchClassLoader loader) {
-        Launch.blackboard.put("remapper.config", CONFIG);
+        Launch.blackboard.put("remapper.config", SNAPSHOT != null ? SNAPSHOT : CONFIG);
         loader.registerTransformer(TRANSFORMER);
     }
 